@@ -0,0 +1,41 @@
+package app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Main.loadOntology on the bundled ontology: parsing the Turtle sources every time (snapshot off)
+// and decoding the RDF Thrift snapshot the first run wrote. the bundled files have a fixed size,
+// ontology.CatalogParseBenchmark parses generated catalogs of every size
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class LoadOntologyBenchmark {
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dontology.snapshot=")
+    public void parseSources(Blackhole bh) throws Exception {
+        Main.loadOntology();
+        bh.consume(Main.model);
+        bh.consume(Main.titleIndex);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dontology.snapshot=target/jmh/ontology.rt")
+    public void readSnapshot(Blackhole bh) throws Exception {
+        Main.loadOntology();
+        bh.consume(Main.model);
+        bh.consume(Main.titleIndex);
+    }
+}
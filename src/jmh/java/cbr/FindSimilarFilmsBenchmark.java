@@ -0,0 +1,52 @@
+package cbr;
+
+import ontology.BenchmarkCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucm.gaia.jcolibri.exception.ExecutionException;
+import ucm.gaia.jcolibri.method.retrieve.RetrievalResult;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+// FilmCbrApplication.findSimilarFilms with the configured retrieval mode (-Dcbr.retrieval),
+// a different query film on every call
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindSimilarFilmsBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int films;
+
+    @Param({"5", "50", "500"})
+    int topN;
+
+    FilmCbrApplication cbrApp;
+    int next;
+
+    @Setup
+    public void load() throws ExecutionException {
+        cbrApp = new FilmCbrApplication(BenchmarkCatalog.generate(films));
+        cbrApp.configure();
+        cbrApp.preCycle();
+    }
+
+    @Benchmark
+    public Collection<RetrievalResult> findSimilarFilms() throws ExecutionException {
+        next = (next + 1) % films;
+        return cbrApp.findSimilarFilms(BenchmarkCatalog.title(next), topN);
+    }
+}
@@ -0,0 +1,54 @@
+package cbr;
+
+import ontology.BenchmarkCatalog;
+import ontology.QueryRegistry;
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucm.gaia.jcolibri.cbrcore.CBRCase;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+// JenaOntologyConnector.retrieveAllCases plus encoding every case, walking the graph and, for
+// comparison, with the CASE_BASE query
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RetrieveAllCasesBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int films;
+
+    JenaOntologyConnector connector;
+
+    @Setup
+    public void load() {
+        Model model = BenchmarkCatalog.generate(films);
+        QueryRegistry.getInstance();
+        connector = new JenaOntologyConnector(model, new CaseEncoder());
+    }
+
+    @Benchmark
+    public Collection<CBRCase> retrieveAllCases() {
+        return connector.retrieveAllCases();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcbr.caseLoader=sparql")
+    public Collection<CBRCase> retrieveAllCasesSparql() {
+        return connector.retrieveAllCases();
+    }
+}
@@ -0,0 +1,87 @@
+package cbr;
+
+import ontology.BenchmarkCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ucm.gaia.jcolibri.cbrcore.CBRCase;
+import ucm.gaia.jcolibri.exception.NoApplicableSimilarityFunctionException;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+// EncodedSetSimilarity.compute on the encoded genre and actor id sets of the catalog's cases, the
+// form the live scoring compares: the first film against the next candidate on every call, so the
+// inputs follow the catalog's mix. the string* benchmarks run SetSimilarity on the comma-joined
+// lists of the same cases for comparison
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SetSimilarityBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int films;
+
+    final EncodedSetSimilarity similarity = new EncodedSetSimilarity();
+    final SetSimilarity stringSimilarity = new SetSimilarity();
+    int[][] genreIds;
+    int[][] actorIds;
+    String[] genres;
+    String[] actors;
+    int next;
+
+    @Setup
+    public void load() {
+        Collection<CBRCase> cases = new JenaOntologyConnector(BenchmarkCatalog.generate(films), new CaseEncoder()).retrieveAllCases();
+        genreIds = new int[cases.size()][];
+        actorIds = new int[cases.size()][];
+        genres = new String[cases.size()];
+        actors = new String[cases.size()];
+        int i = 0;
+        for (CBRCase cbrCase : cases) {
+            CaseDescription desc = (CaseDescription) cbrCase.getDescription();
+            genreIds[i] = desc.getGenreIds();
+            actorIds[i] = desc.getActorIds();
+            genres[i] = desc.getGenres();
+            actors[i++] = desc.getActors();
+        }
+    }
+
+    @Benchmark
+    public double genres() throws NoApplicableSimilarityFunctionException {
+        return similarity.compute(genreIds[0], genreIds[candidate()]);
+    }
+
+    @Benchmark
+    public double actors() throws NoApplicableSimilarityFunctionException {
+        return similarity.compute(actorIds[0], actorIds[candidate()]);
+    }
+
+    @Benchmark
+    public double stringGenres() throws NoApplicableSimilarityFunctionException {
+        return stringSimilarity.compute(genres[0], genres[candidate()]);
+    }
+
+    @Benchmark
+    public double stringActors() throws NoApplicableSimilarityFunctionException {
+        return stringSimilarity.compute(actors[0], actors[candidate()]);
+    }
+
+    private int candidate() {
+        if (++next == genres.length) {
+            next = 1;
+        }
+        return next;
+    }
+}
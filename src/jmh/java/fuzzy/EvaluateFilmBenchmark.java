@@ -0,0 +1,52 @@
+package fuzzy;
+
+import ontology.BenchmarkCatalog;
+import ontology.QueryRegistry;
+import ontology.TitleIndex;
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// FuzzyFilmQualitySystem.evaluateFilm: title lookup, the two film queries, the criteria and the
+// fuzzy inference, a different film on every call. -Dfuzzy.compiled=false measures jFuzzyLogic
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluateFilmBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int films;
+
+    Model model;
+    TitleIndex titleIndex;
+    FuzzyFilmQualitySystem fuzzySystem;
+    int next;
+
+    @Setup
+    public void load() {
+        model = BenchmarkCatalog.generate(films);
+        titleIndex = TitleIndex.build(model);
+        QueryRegistry.getInstance();
+        fuzzySystem = new FuzzyFilmQualitySystem();
+    }
+
+    @Benchmark
+    public FuzzyFilmQualitySystem.FilmQualityResult evaluateFilm() {
+        next = (next + 1) % films;
+        return fuzzySystem.evaluateFilm(BenchmarkCatalog.title(next), model, titleIndex);
+    }
+}
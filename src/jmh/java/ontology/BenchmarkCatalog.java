@@ -0,0 +1,45 @@
+package ontology;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// generated catalogs for the benchmarks, from CatalogGenerator with its default distributions.
+// the same size always gives the same triples
+public final class BenchmarkCatalog {
+
+    public static final long SEED = 42;
+
+    private BenchmarkCatalog() {
+    }
+
+    // a FilmGraph model, like the one the application loads
+    public static Model generate(int films) {
+        byte[] turtle = turtle(films);
+        Model model = FilmGraph.createModel();
+        FilmGraph.write(model, () -> RDFDataMgr.read(model, new ByteArrayInputStream(turtle), null, Lang.TURTLE));
+        return model;
+    }
+
+    public static byte[] turtle(int films) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            new CatalogGenerator(films, SEED).write(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static String title(int film) {
+        return CatalogGenerator.filmTitle(film);
+    }
+}
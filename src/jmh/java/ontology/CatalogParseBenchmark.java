@@ -0,0 +1,47 @@
+package ontology;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+// the parse step of OntologyStore.load on generated catalogs: Turtle into a FilmGraph model,
+// then the title index the loader builds next
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CatalogParseBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int films;
+
+    byte[] turtle;
+
+    @Setup
+    public void generate() {
+        turtle = BenchmarkCatalog.turtle(films);
+    }
+
+    @Benchmark
+    public TitleIndex parse() {
+        Model model = FilmGraph.createModel();
+        FilmGraph.write(model, () -> RDFDataMgr.read(model, new ByteArrayInputStream(turtle), null, Lang.TURTLE));
+        return TitleIndex.build(model);
+    }
+}
@@ -0,0 +1,81 @@
+package ontology;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// recommend_all.rq (STRICT) and recommend_any.rq (RANKED) through the query registry, results
+// consumed to the end, for a few criteria of different selectivity
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecommendQueryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int films;
+
+    @Param({"genre", "genre+years", "director", "actor+language", "all"})
+    String criteria;
+
+    Model model;
+    QuerySolutionMap bindings;
+
+    @Setup
+    public void load() {
+        model = BenchmarkCatalog.generate(films);
+        QueryRegistry.getInstance();
+        bindings = new QuerySolutionMap();
+        switch (criteria) {
+            case "genre" -> resources("G", "Thriller");
+            case "genre+years" -> {
+                resources("G", "Thriller");
+                years("1990", "1999");
+            }
+            case "director" -> resources("D", "Director17");
+            case "actor+language" -> resources("A", "Actor42", "L", "French");
+            case "all" -> {
+                resources("G", "Drama", "D", "Director5", "A", "Actor7", "L", "English");
+                years("1980", "2010");
+            }
+            default -> throw new IllegalArgumentException("Unknown criteria: " + criteria);
+        }
+    }
+
+    @Benchmark
+    public int recommendAll() {
+        return QueryRegistry.getInstance().select(QueryRegistry.RECOMMEND_ALL, model, bindings, ResultSetFormatter::consume);
+    }
+
+    @Benchmark
+    public int recommendAny() {
+        return QueryRegistry.getInstance().select(QueryRegistry.RECOMMEND_ANY, model, bindings, ResultSetFormatter::consume);
+    }
+
+    private void resources(String... varsAndLocalNames) {
+        for (int i = 0; i < varsAndLocalNames.length; i += 2) {
+            bindings.add(varsAndLocalNames[i], model.createResource(TitleIndex.NS + varsAndLocalNames[i + 1]));
+        }
+    }
+
+    private void years(String from, String to) {
+        bindings.add("yearFrom", model.createTypedLiteral(from, XSDDatatype.XSDgYear));
+        bindings.add("yearTo", model.createTypedLiteral(to, XSDDatatype.XSDgYear));
+    }
+}
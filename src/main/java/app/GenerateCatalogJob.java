@@ -0,0 +1,43 @@
+package app;
+
+import ontology.CatalogGenerator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// batch job: writes a synthetic catalog as Turtle, to load with -Dontology.catalog=<file>.
+// distributions: -Dcatalog.directors, -Dcatalog.actors, -Dcatalog.actorsPerFilm=min-max,
+// -Dcatalog.directorSkew, -Dcatalog.actorSkew (Zipf exponents) and -Dcatalog.awardRate
+// usage: GenerateCatalogJob [output file] [films] [seed]
+public class GenerateCatalogJob {
+
+    public static void main(String[] args) throws Exception {
+        Path output = Path.of(args.length > 0 ? args[0] : ".cache/catalog.ttl");
+        int films = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        CatalogGenerator generator = new CatalogGenerator(films, seed);
+        Integer directors = Integer.getInteger("catalog.directors");
+        if (directors != null) generator.setDirectors(directors);
+        Integer actors = Integer.getInteger("catalog.actors");
+        if (actors != null) generator.setActors(actors);
+        String actorsPerFilm = System.getProperty("catalog.actorsPerFilm");
+        if (actorsPerFilm != null) {
+            String[] bounds = actorsPerFilm.split("-");
+            generator.setActorsPerFilm(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[bounds.length - 1]));
+        }
+        String directorSkew = System.getProperty("catalog.directorSkew");
+        if (directorSkew != null) generator.setDirectorSkew(Double.parseDouble(directorSkew));
+        String actorSkew = System.getProperty("catalog.actorSkew");
+        if (actorSkew != null) generator.setActorSkew(Double.parseDouble(actorSkew));
+        String awardRate = System.getProperty("catalog.awardRate");
+        if (awardRate != null) generator.setAwardRate(Double.parseDouble(awardRate));
+
+        long start = System.nanoTime();
+        generator.write(output);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Wrote " + films + " films to " + output + " (" + Files.size(output) / (1024 * 1024)
+                + " MB) in " + millis + " ms");
+    }
+}
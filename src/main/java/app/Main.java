@@ -1,16 +1,20 @@
 package app;
 
 import fuzzy.FuzzyFilmQualitySystem;
+import metrics.Metrics;
+import metrics.RecommendEvent;
+import ontology.OntologyStore;
+import ontology.QueryRegistry;
+import ontology.RecommendCursor;
+import ontology.RecommendIndex;
+import ontology.RecommendationService;
+import ontology.TitleIndex;
+import cbr.CaseBaseService;
 import cbr.CaseBasedReasoning;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.riot.Lang;
-import org.apache.jena.riot.RDFDataMgr;
 
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 import java.util.List;
 
@@ -18,9 +22,11 @@ public class Main {
 
     static final String NS = "http://example.org/films#";
     static Model model;
+    static TitleIndex titleIndex;
+    static Startup startup;
 
     public static void main(String[] args) throws Exception {
-        loadOntology();
+        startup = Startup.begin();
         Scanner in = new Scanner(System.in);
 
         while (true) {
@@ -32,18 +38,28 @@ public class Main {
             } while (choice.isEmpty());
 
             if (choice.equalsIgnoreCase("q")) {
+                if (startup.queries.isDone() && !startup.queries.isCompletedExceptionally()) {
+                    QueryRegistry.getInstance().printStats();
+                }
+                if (startup.recommendations.isDone() && !startup.recommendations.isCompletedExceptionally()) {
+                    System.out.println(startup.recommendations.join().getCacheStats());
+                }
+                Metrics.printStats(System.out);
                 System.out.println("\nExiting Film Recommender. Goodbye!\n");
                 break;
             }
 
-            switch (choice) {
-                case "1" -> performRecommendation(in);
-                case "2" -> performQualityAssessment(in);
-                case "3" -> performCBRRecommendation(in);
-                default -> {
-                    System.out.println("Invalid choice. Please try again.");
-                    continue;
+            // a failed startup stage only fails the actions that need it, the menu keeps running
+            try {
+                switch (choice) {
+                    case "1" -> performRecommendation(in);
+                    case "2" -> performQualityAssessment(in);
+                    case "3" -> performCBRRecommendation(in);
+                    case "4" -> performQualityLeaderboard(in);
+                    default -> System.out.println("Invalid choice. Please try again.");
                 }
+            } catch (IllegalStateException e) {
+                System.err.println("Error: " + e.getMessage());
             }
 
         }
@@ -51,21 +67,18 @@ public class Main {
         in.close();
     }
 
-    private static void loadOntology() throws Exception {
+    static void loadOntology() throws Exception {
         System.out.println("\nLoading films...");
-        model = ModelFactory.createDefaultModel();
+        long start = System.nanoTime();
+        model = OntologyStore.load();
 
-        try (InputStream is1 = Main.class.getResourceAsStream("/ontology/films.owl")) {
-            if (is1 == null) throw new IllegalArgumentException("films.owl not found");
-            RDFDataMgr.read(model, is1, null, Lang.TURTLE);
-        }
+        long indexStart = System.nanoTime();
+        titleIndex = TitleIndex.build(model);
+        long end = System.nanoTime();
+        System.out.printf("  %-40s %6d ms%n", "build title index", (end - indexStart) / 1_000_000);
 
-        try (InputStream is2 = Main.class.getResourceAsStream("/ontology/film-instances.owl")) {
-            if (is2 == null) throw new IllegalArgumentException("film-instances.owl not found");
-            RDFDataMgr.read(model, is2, null, Lang.TURTLE);
-        }
-
-        System.out.println("Films loaded successfully.\n");
+        System.out.println("Films loaded successfully (" + model.size() + " triples in "
+                + (end - start) / 1_000_000 + " ms).\n");
     }
 
     private static void printHeader() {
@@ -74,11 +87,12 @@ public class Main {
         System.out.println("  [1] RECOMMEND  - Find films matching criteria");
         System.out.println("  [2] ASSESS     - Evaluate film quality (using Fuzzy Logic)");
         System.out.println("  [3] SIMILAR    - Find similar films (Case-Based Reasoning)");
+        System.out.println("  [4] RANKING    - Rank the whole catalog by quality (Fuzzy Logic)");
         System.out.println("  [Q] QUIT       - Exit application");
     }
 
     private static String getChoice(Scanner in) {
-        System.out.print("\nYour choice [1/2/3/Q]: ");
+        System.out.print("\nYour choice [1/2/3/4/Q]: ");
         String choice = in.nextLine().trim();
         return choice;
     }
@@ -92,10 +106,6 @@ public class Main {
         String mode = in.nextLine().trim();
         if (mode.isEmpty()) mode = "2";
 
-        String queryRes = mode.equals("1")
-                ? "/sparql/recommend_all.rq"
-                : "/sparql/recommend_any.rq";
-
         System.out.println("\nFILM RECOMMENDATIONS");
         System.out.println("\nEnter search criteria (leave empty to skip):");
 
@@ -117,12 +127,7 @@ public class Main {
         System.out.print("Year to (YYYY): ");
         String yearTo = in.nextLine().trim();
 
-        String sparql;
-        try (InputStream is = Main.class.getResourceAsStream(queryRes)) {
-            if (is == null) throw new IllegalArgumentException("SPARQL not found: " + queryRes);
-            sparql = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-        }
-        Query query = QueryFactory.create(sparql);
+        awaitCatalog();
 
         QuerySolutionMap initial = new QuerySolutionMap();
         if (!genre.isEmpty())    initial.add("G", model.createResource(NS + strip(genre)));
@@ -134,25 +139,61 @@ public class Main {
 
         System.out.println("\nSearch Results:\n");
 
-        QueryExecution qexec = QueryExecution.create()
-                .query(query)
-                .model(model)
-                .substitution(initial)
-                .build();
+        boolean showScore = mode.equals("2");
+        RecommendationService recommendations = Startup.await(startup.recommendations, "recommendations");
+        RecommendIndex.Mode recommendMode = showScore ? RecommendIndex.Mode.RANKED : RecommendIndex.Mode.STRICT;
 
-        try (qexec) {
-            ResultSet rs = qexec.execSelect();
-            if (!rs.hasNext()) {
-                System.out.println("No films found matching the specified criteria.");
-            } else {
-                printFormattedResults(rs, mode.equals("2"));
+        // rows are printed as they arrive, a page of films at a time
+        int[] shown = {0};
+        RecommendCursor cursor = null;
+        int page = 1;
+        while (true) {
+            RecommendEvent event = new RecommendEvent();
+            event.begin();
+            long start = System.nanoTime();
+            long[] firstRow = {0};
+            int shownBefore = shown[0];
+            cursor = recommendations.recommendPage(recommendMode, initial, cursor, RecommendationService.PAGE_SIZE, sol -> {
+                if (shown[0] == shownBefore) {
+                    firstRow[0] = System.nanoTime() - start;
+                }
+                if (shown[0]++ == 0) {
+                    printResultsHeader(showScore);
+                }
+                printResultRow(sol, showScore);
+                System.out.flush();
+            });
+            event.end();
+            if (event.shouldCommit()) {
+                event.mode = recommendMode.name();
+                event.criteria = RecommendEvent.criteria(initial);
+                event.pageSize = RecommendationService.PAGE_SIZE;
+                event.page = page;
+                event.resultCount = shown[0] - shownBefore;
+                event.morePages = cursor != null;
+                event.firstRow = firstRow[0];
+                event.commit();
+            }
+            if (cursor == null) {
+                break;
             }
+            System.out.print("\n-- page " + page++ + ", more results: [Enter] next page, [Q] stop: ");
+            if (in.nextLine().trim().equalsIgnoreCase("q")) {
+                break;
+            }
+            System.out.println();
+        }
+
+        if (shown[0] == 0) {
+            System.out.println("No films found matching the specified criteria.");
         }
+        System.out.println();
         System.out.flush();
     }
 
     private static void performQualityAssessment(Scanner in) {
         System.out.println("\nFILM QUALITY ASSESSMENT");
+        awaitCatalog();
         listAllFilms();
         System.out.print("\nEnter film title: ");
         String filmTitle = in.nextLine().trim();
@@ -163,8 +204,9 @@ public class Main {
         }
 
         try {
+            Startup.await(startup.fuzzy, "fuzzy engine");
             FuzzyFilmQualitySystem fuzzySystem = new FuzzyFilmQualitySystem();
-            FuzzyFilmQualitySystem.FilmQualityResult result = fuzzySystem.evaluateFilm(filmTitle, model);
+            FuzzyFilmQualitySystem.FilmQualityResult result = fuzzySystem.evaluateFilm(filmTitle, model, titleIndex);
 
             if (result == null) {
                 System.out.println("\nFilm not found: " + filmTitle);
@@ -179,8 +221,49 @@ public class Main {
         System.out.flush();
     }
 
+    private static void performQualityLeaderboard(Scanner in) {
+        System.out.println("\nFILM QUALITY RANKING");
+        System.out.print("How many films to show? [default: 20]: ");
+        String topStr = in.nextLine().trim();
+
+        int top = 20;
+        if (!topStr.isEmpty()) {
+            try {
+                top = Math.max(1, Integer.parseInt(topStr));
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid number format. Using default: 20");
+            }
+        }
+
+        try {
+            awaitCatalog();
+            Startup.await(startup.fuzzy, "fuzzy engine");
+
+            long start = System.nanoTime();
+            List<FuzzyFilmQualitySystem.FilmQualityResult> ranking = new FuzzyFilmQualitySystem().evaluateCatalog(model);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("%nAssessed %d films in %d ms%n%n", ranking.size(), millis);
+            System.out.printf("%-5s %-40s %-6s %-8s %-10s%n", "Rank", "Title", "Year", "Quality", "Rating");
+            System.out.println("=".repeat(75));
+
+            int rank = 1;
+            for (FuzzyFilmQualitySystem.FilmQualityResult result : ranking) {
+                if (rank > top) break;
+                System.out.printf("%-5d %-40s %-6d %-8.0f %-10s%n",
+                        rank++, truncate(result.filmTitle, 40), result.releaseYear,
+                        result.qualityScore, result.qualityRating);
+            }
+        } catch (Exception e) {
+            System.err.println("Error during quality ranking: " + e.getMessage());
+            e.printStackTrace();
+        }
+        System.out.flush();
+    }
+
     private static void performCBRRecommendation(Scanner in) {
         System.out.println("\nSIMILAR FILMS");
+        awaitCatalog();
         listAllFilms();
 
         System.out.print("\nEnter film title to find similar films: ");
@@ -191,13 +274,15 @@ public class Main {
             return;
         }
 
-        int totalFilms = getTotalFilmCount();
-        if (totalFilms <= 1) {
+        CaseBaseService caseBase = Startup.await(startup.caseBase, "case base");
+        // the query film's own cases are skipped too, so this only bounds what can come back
+        int totalCases = caseBase.getStats().getCaseCount();
+        if (totalCases <= 1) {
             System.out.println("Not enough films in database for comparison.");
             return;
         }
 
-        int maxPossible = totalFilms - 1;  // exclude-ujem target film
+        int maxPossible = totalCases - 1;  // exclude-ujem target film
         int topN = 5;  // default
 
         System.out.print("How many similar films to show? [1-" + maxPossible + ", default: 5]: ");
@@ -224,8 +309,7 @@ public class Main {
         topN = Math.max(1, Math.min(topN, maxPossible));
 
         try {
-            CaseBasedReasoning cbr = new CaseBasedReasoning(model);
-            List<CaseBasedReasoning.SimilarFilm> similarFilms = cbr.findSimilarFilms(filmTitle, topN);
+            List<CaseBasedReasoning.SimilarFilm> similarFilms = caseBase.findSimilarFilms(filmTitle, topN);
 
             if (similarFilms.isEmpty()) {
                 System.out.println("\nFilm not found: " + filmTitle);
@@ -265,26 +349,13 @@ public class Main {
         System.out.flush();
     }
 
-    private static int getTotalFilmCount() {
-        String sparql =
-                "PREFIX : <http://example.org/films#> " +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                        "SELECT (COUNT(?film) AS ?count) WHERE { ?film rdf:type :Film }";
-
-        try (QueryExecution qexec = QueryExecution.create()
-                .query(QueryFactory.create(sparql))
-                .model(model)
-                .build()) {
-
-            ResultSet rs = qexec.execSelect();
-            if (rs.hasNext()) {
-                return rs.next().getLiteral("count").getInt();
-            }
-        }
-        return 0;
+    // model, title index and queries, needed by every menu option
+    static void awaitCatalog() {
+        Startup.await(startup.ontology, "ontology");
+        Startup.await(startup.queries, "query registry");
     }
 
-    private static void printFormattedResults(ResultSet rs, boolean showScore) {
+    private static void printResultsHeader(boolean showScore) {
         if (showScore) {
             System.out.printf("%-40s %-8s %-30s %-30s %-6s%n",
                     "Title", "Year", "Director", "Genres", "Score");
@@ -294,34 +365,29 @@ public class Main {
                     "Title", "Year", "Director", "Genres");
             System.out.println("=".repeat(110));
         }
+    }
 
-        while (rs.hasNext()) {
-            QuerySolution sol = rs.next();
-
-            String title = sol.contains("title") ? sol.getLiteral("title").getString() : "N/A";
-            String year = sol.contains("year") ? extractYear(sol.getLiteral("year").getString()) : "N/A";
-            String director = sol.contains("director") ? sol.getLiteral("director").getString() : "N/A";
+    private static void printResultRow(QuerySolution sol, boolean showScore) {
+        String title = sol.contains("title") ? sol.getLiteral("title").getString() : "N/A";
+        String year = sol.contains("year") ? extractYear(sol.getLiteral("year").getString()) : "N/A";
+        String director = sol.contains("director") ? sol.getLiteral("director").getString() : "N/A";
 
-            String genres = "N/A";
-            if (sol.contains("genres")) {
-                String temp = sol.getLiteral("genres").getString();
-                if (!temp.isEmpty()) {
-                    genres = temp;
-                }
-            }
-
-            if (showScore) {
-                int score = sol.contains("score") ? sol.getLiteral("score").getInt() : 0;
-                System.out.printf("%-40s %-8s %-30s %-30s %-6d%n",
-                        truncate(title, 40), year, truncate(director, 30), truncate(genres, 30), score);
-            } else {
-                System.out.printf("%-40s %-8s %-30s %-30s%n",
-                        truncate(title, 40), year, truncate(director, 30), truncate(genres, 30));
+        String genres = "N/A";
+        if (sol.contains("genres")) {
+            String temp = sol.getLiteral("genres").getString();
+            if (!temp.isEmpty()) {
+                genres = temp;
             }
         }
 
-        System.out.println();
-        System.out.flush();
+        if (showScore) {
+            int score = sol.contains("score") ? sol.getLiteral("score").getInt() : 0;
+            System.out.printf("%-40s %-8s %-30s %-30s %-6d%n",
+                    truncate(title, 40), year, truncate(director, 30), truncate(genres, 30), score);
+        } else {
+            System.out.printf("%-40s %-8s %-30s %-30s%n",
+                    truncate(title, 40), year, truncate(director, 30), truncate(genres, 30));
+        }
     }
 
     private static String extractYear(String yearLiteral) {
@@ -336,23 +402,13 @@ public class Main {
         return str.substring(0, maxLength - 3) + "...";
     }
 
-    private static String strip(String s) {
+    static String strip(String s) {
         return s.replaceAll("[\\s,'']", "");
     }
 
 
     private static void listAllFilms() {
-        String sparql =
-                "PREFIX : <http://example.org/films#> " +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                        "SELECT ?title WHERE { ?film rdf:type :Film ; :title ?title } ORDER BY ?title";
-
-        try (QueryExecution qexec = QueryExecution.create()
-                .query(QueryFactory.create(sparql))
-                .model(model)
-                .build()) {
-
-            ResultSet rs = qexec.execSelect();
+        QueryRegistry.getInstance().select(QueryRegistry.LIST_FILMS, model, rs -> {
             System.out.println("\nAvailable films:");
             int count = 0;
             while (rs.hasNext()) {
@@ -360,6 +416,7 @@ public class Main {
                 count++;
             }
             System.out.println("\nTotal: " + count + " films");
-        }
+            return count;
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package app;
+
+import cbr.CaseBasedReasoning;
+
+import java.nio.file.Path;
+
+// batch job: precomputes the similar films of every film for CaseBasedReasoning's table lookup
+// usage: NeighborTableJob [output file] [neighbors per film]
+public class NeighborTableJob {
+
+    public static void main(String[] args) throws Exception {
+        Path output = Path.of(args.length > 0 ? args[0] : CaseBasedReasoning.NEIGHBOR_TABLE_PATH);
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        Main.loadOntology();
+        CaseBasedReasoning cbr = new CaseBasedReasoning(Main.model);
+
+        long start = System.nanoTime();
+        cbr.writeNeighborTable(output, k);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Wrote top " + k + " neighbors to " + output + " in " + millis + " ms");
+    }
+}
@@ -0,0 +1,148 @@
+package app;
+
+import ontology.CatalogGenerator;
+import ontology.FilmGraph;
+import ontology.QueryRegistry;
+import ontology.RecommendIndex;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// times the RECOMMEND engines on a generated catalog: single-pass .rq files, two-phase .rq files
+// and the in-memory index, and checks that all three return the same rows.
+// args: [films=100000] [runs=3]
+public class RecommendBenchmark {
+
+    private static final String NS = Main.NS;
+
+    public static void main(String[] args) {
+        int films = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        long start = System.nanoTime();
+        Model model = generateCatalog(films, 42);
+        System.out.printf("Generated %d films (%d triples) in %d ms%n",
+                films, model.size(), (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        RecommendIndex index = RecommendIndex.build(model);
+        System.out.printf("Built recommendation index in %d ms%n%n", (System.nanoTime() - start) / 1_000_000);
+
+        QueryRegistry queries = QueryRegistry.getInstance();
+        System.out.printf("%-8s %-34s %12s %12s %12s %6s%n", "Mode", "Criteria", "Flat (ms)", "2-phase (ms)", "Index (ms)", "Rows");
+        System.out.println("=".repeat(90));
+
+        boolean allSame = true;
+        for (Map.Entry<String, QuerySolutionMap> criteria : criteria(model).entrySet()) {
+            for (RecommendIndex.Mode mode : RecommendIndex.Mode.values()) {
+                boolean strict = mode == RecommendIndex.Mode.STRICT;
+                String flatQuery = strict ? QueryRegistry.RECOMMEND_ALL : QueryRegistry.RECOMMEND_ANY;
+                String twoPhaseQuery = strict ? QueryRegistry.RECOMMEND_ALL_TWO_PHASE : QueryRegistry.RECOMMEND_ANY_TWO_PHASE;
+                QuerySolutionMap bindings = criteria.getValue();
+
+                List<String> flatRows = new ArrayList<>();
+                List<String> twoPhaseRows = new ArrayList<>();
+                List<String> indexRows = new ArrayList<>();
+                double flatMs = median(runs, () -> copy(queries.select(flatQuery, model, bindings, RecommendBenchmark::rows), flatRows));
+                double twoPhaseMs = median(runs, () -> copy(queries.select(twoPhaseQuery, model, bindings, RecommendBenchmark::rows), twoPhaseRows));
+                double indexMs = median(runs, () -> copy(rows(index.recommend(mode, bindings)), indexRows));
+
+                boolean same = flatRows.equals(twoPhaseRows) && flatRows.equals(indexRows);
+                allSame &= same;
+                System.out.printf("%-8s %-34s %12.1f %12.1f %12.2f %6d%s%n", mode, criteria.getKey(),
+                        flatMs, twoPhaseMs, indexMs, flatRows.size(), same ? "" : "  RESULTS DIFFER");
+            }
+        }
+
+        System.out.println();
+        System.out.println(allSame ? "All engines returned identical rows." : "Engines returned different rows!");
+        if (!allSame) {
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, QuerySolutionMap> criteria(Model model) {
+        Map<String, QuerySolutionMap> criteria = new LinkedHashMap<>();
+        criteria.put("genre", bindings(model, "G", "Thriller"));
+        criteria.put("genre + years 1990-1999", years(bindings(model, "G", "Thriller"), model, "1990", "1999"));
+        criteria.put("director", bindings(model, "D", "Director17"));
+        criteria.put("actor + language", bindings(model, "A", "Actor42", "L", "French"));
+        criteria.put("all criteria",
+                years(bindings(model, "G", "Drama", "D", "Director5", "A", "Actor7", "L", "English"), model, "1980", "2010"));
+        return criteria;
+    }
+
+    private static QuerySolutionMap bindings(Model model, String... varsAndLocalNames) {
+        QuerySolutionMap bindings = new QuerySolutionMap();
+        for (int i = 0; i < varsAndLocalNames.length; i += 2) {
+            bindings.add(varsAndLocalNames[i], model.createResource(NS + varsAndLocalNames[i + 1]));
+        }
+        return bindings;
+    }
+
+    private static QuerySolutionMap years(QuerySolutionMap bindings, Model model, String from, String to) {
+        bindings.add("yearFrom", model.createTypedLiteral(from, XSDDatatype.XSDgYear));
+        bindings.add("yearTo", model.createTypedLiteral(to, XSDDatatype.XSDgYear));
+        return bindings;
+    }
+
+    // a CatalogGenerator catalog with its default distributions, loaded into a FilmGraph model like
+    // the one the application uses. titles are unique so the row order is fully determined
+    static Model generateCatalog(int films, long seed) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            new CatalogGenerator(films, seed).write(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] turtle = out.toByteArray();
+        Model model = FilmGraph.createModel();
+        FilmGraph.write(model, () -> RDFDataMgr.read(model, new ByteArrayInputStream(turtle), null, Lang.TURTLE));
+        return model;
+    }
+
+    private static List<String> rows(ResultSet rs) {
+        List<String> rows = new ArrayList<>();
+        while (rs.hasNext()) {
+            QuerySolution sol = rs.next();
+            rows.add(sol.get("title") + "|" + sol.get("year") + "|" + sol.get("director") + "|"
+                    + sol.get("genres") + "|" + sol.get("score"));
+        }
+        return rows;
+    }
+
+    private static void copy(List<String> from, List<String> to) {
+        to.clear();
+        to.addAll(from);
+    }
+
+    // one untimed warm-up run, then the median of the timed ones
+    private static double median(int runs, Runnable run) {
+        run.run();
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            run.run();
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[runs / 2];
+    }
+}
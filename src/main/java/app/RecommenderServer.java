@@ -0,0 +1,401 @@
+package app;
+
+import cbr.CaseBaseService;
+import cbr.CaseBasedReasoning;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fuzzy.FuzzyFilmQualitySystem;
+import metrics.RecommendEvent;
+import ontology.RecommendCursor;
+import ontology.RecommendIndex;
+import ontology.RecommendationService;
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonNull;
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.json.JsonString;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.QuerySolutionMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// HTTP/JSON front end over the same preloaded model, case base and fuzzy engine as the menu.
+//   GET /recommend?mode=ranked|strict&genre=&director=&actor=&language=&yearFrom=&yearTo=&pageSize=&cursor=
+//   GET /assess?title=
+//   GET /similar?title=&n=
+//   GET /health
+// at most -Dserver.maxConcurrent requests do work at once; a request that can't start and finish
+// within -Dserver.requestTimeoutMs gets 503 (no slot) or 504 (too slow).
+// usage: RecommenderServer [port]
+public class RecommenderServer {
+
+    public static final int PORT = Integer.getInteger("server.port", 8080);
+    public static final int MAX_CONCURRENT = Integer.getInteger("server.maxConcurrent", 4 * Runtime.getRuntime().availableProcessors());
+    public static final long REQUEST_TIMEOUT_MS = Long.getLong("server.requestTimeoutMs", 10_000);
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_SIMILAR = 100;
+
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final ExecutorService workers;
+    private final Semaphore slots = new Semaphore(MAX_CONCURRENT);
+
+    private final RecommendationService recommendations;
+    private final CaseBaseService caseBase;
+
+    private RecommenderServer(int port) throws IOException {
+        recommendations = Startup.await(Main.startup.recommendations, "recommendations");
+        caseBase = Startup.await(Main.startup.caseBase, "case base");
+        Startup.await(Main.startup.fuzzy, "fuzzy engine");
+
+        requests = newExecutor("http");
+        workers = newExecutor("http-worker");
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(requests);
+        server.createContext("/recommend", exchange -> handle(exchange, () -> recommend(query(exchange))));
+        server.createContext("/assess", exchange -> handle(exchange, () -> assess(query(exchange))));
+        server.createContext("/similar", exchange -> handle(exchange, () -> similar(query(exchange))));
+        server.createContext("/health", exchange -> handle(exchange, this::health));
+        server.start();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        RecommenderServer server = start(port);
+        System.out.println("Listening on http://localhost:" + server.getPort()
+                + " (max " + MAX_CONCURRENT + " concurrent requests, " + REQUEST_TIMEOUT_MS + " ms timeout)");
+    }
+
+    // loads everything the endpoints use, then starts serving; port 0 picks a free port
+    static RecommenderServer start(int port) throws IOException {
+        if (Main.startup == null) {
+            Main.startup = Startup.begin();
+        }
+        Main.awaitCatalog();
+        return new RecommenderServer(port);
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        requests.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    // virtual threads where the JDK has them (21+), a cached pool of daemon threads otherwise
+    private static ExecutorService newExecutor(String name) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threads = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, name + "-" + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange, Callable<Response> endpoint) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, Response.error(405, "Only GET is supported"));
+                return;
+            }
+            send(exchange, run(endpoint));
+        }
+    }
+
+    // the slot wait and the work share one deadline
+    private Response run(Callable<Response> endpoint) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REQUEST_TIMEOUT_MS);
+        try {
+            if (!slots.tryAcquire(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return Response.error(503, "Server busy, try again later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Response.error(503, "Interrupted");
+        }
+
+        // queries can't be interrupted, so timed-out work runs to its end and only then frees its slot
+        CompletableFuture<Response> work = new CompletableFuture<>();
+        try {
+            workers.execute(() -> {
+                try {
+                    work.complete(endpoint.call());
+                } catch (Throwable e) {
+                    work.completeExceptionally(e);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+
+        try {
+            return work.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return Response.error(504, "Request timed out after " + REQUEST_TIMEOUT_MS + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Response.error(503, "Interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException) {
+                return Response.error(400, cause.getMessage());
+            }
+            System.err.println("Request failed: " + cause);
+            return Response.error(500, "Internal error");
+        }
+    }
+
+    private Response recommend(Map<String, String> params) {
+        String mode = params.getOrDefault("mode", "ranked");
+        RecommendIndex.Mode recommendMode;
+        if (mode.equalsIgnoreCase("ranked")) {
+            recommendMode = RecommendIndex.Mode.RANKED;
+        } else if (mode.equalsIgnoreCase("strict")) {
+            recommendMode = RecommendIndex.Mode.STRICT;
+        } else {
+            throw new IllegalArgumentException("mode must be ranked or strict");
+        }
+
+        QuerySolutionMap initial = new QuerySolutionMap();
+        addResource(initial, "G", params.get("genre"));
+        addResource(initial, "D", params.get("director"));
+        addResource(initial, "A", params.get("actor"));
+        addResource(initial, "L", params.get("language"));
+        addYear(initial, "yearFrom", params.get("yearFrom"));
+        addYear(initial, "yearTo", params.get("yearTo"));
+
+        int pageSize = intParam(params, "pageSize", RecommendationService.PAGE_SIZE, 1, MAX_PAGE_SIZE);
+        String token = params.get("cursor");
+        RecommendCursor after = token == null || token.isEmpty() ? null : RecommendCursor.decode(token);
+        // a strict cursor has no score, a ranked one always has one
+        if (after != null && (after.getScore() == RecommendCursor.NO_SCORE) != (recommendMode == RecommendIndex.Mode.STRICT)) {
+            throw new IllegalArgumentException("cursor is not from a " + mode.toLowerCase(Locale.ROOT) + " listing");
+        }
+
+        RecommendEvent event = new RecommendEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long[] firstRow = {0};
+        JsonArray results = new JsonArray();
+        RecommendCursor next = recommendations.recommendPage(recommendMode, initial, after, pageSize, sol -> {
+            if (results.isEmpty()) {
+                firstRow[0] = System.nanoTime() - start;
+            }
+            results.add(recommendation(sol));
+        });
+        event.end();
+        if (event.shouldCommit()) {
+            event.mode = recommendMode.name();
+            event.criteria = RecommendEvent.criteria(initial);
+            event.pageSize = pageSize;
+            event.page = after == null ? 1 : after.getPage();
+            event.resultCount = results.size();
+            event.morePages = next != null;
+            event.firstRow = firstRow[0];
+            event.commit();
+        }
+
+        JsonObject body = new JsonObject();
+        body.put("mode", recommendMode.name());
+        body.put("results", results);
+        body.put("next", next == null ? JsonNull.instance : new JsonString(next.encode()));
+        return Response.ok(body);
+    }
+
+    private Response assess(Map<String, String> params) {
+        String title = requiredParam(params, "title");
+        FuzzyFilmQualitySystem.FilmQualityResult result = new FuzzyFilmQualitySystem().evaluateFilm(title, Main.model, Main.titleIndex);
+        if (result == null) {
+            return Response.error(404, "Film not found: " + title);
+        }
+
+        JsonObject body = new JsonObject();
+        body.put("title", result.filmTitle);
+        body.put("year", result.releaseYear);
+        body.put("qualityScore", JsonNumber.value(result.qualityScore));
+        body.put("qualityRating", result.qualityRating);
+        body.put("directorQuality", JsonNumber.value(result.directorQuality));
+        body.put("actingQuality", JsonNumber.value(result.actingQuality));
+        body.put("storyQuality", JsonNumber.value(result.storyQuality));
+        body.put("visualEffects", JsonNumber.value(result.visualEffects));
+        body.put("culturalImpact", JsonNumber.value(result.culturalImpact));
+        body.put("imdbRating", JsonNumber.value(result.imdbRating));
+        body.put("boxOffice", JsonNumber.value(result.boxOffice));
+        body.put("budget", JsonNumber.value(result.budget));
+        body.put("awards", strings(result.awards));
+        return Response.ok(body);
+    }
+
+    private Response similar(Map<String, String> params) {
+        String title = requiredParam(params, "title");
+        int n = intParam(params, "n", 5, 1, MAX_SIMILAR);
+        List<CaseBasedReasoning.SimilarFilm> films = caseBase.findSimilarFilms(title, n);
+        if (films.isEmpty()) {
+            return Response.error(404, "Film not found: " + title);
+        }
+
+        JsonArray results = new JsonArray();
+        for (CaseBasedReasoning.SimilarFilm film : films) {
+            JsonObject row = new JsonObject();
+            row.put("title", film.getTitle());
+            row.put("score", JsonNumber.value(film.getScore()));
+            row.put("year", film.getYear());
+            row.put("imdbRating", JsonNumber.value(film.getImdbRating()));
+            row.put("director", film.getDirector());
+            row.put("genres", strings(film.getGenres()));
+            row.put("actors", strings(film.getActors()));
+            row.put("languages", strings(film.getLanguages()));
+            results.add(row);
+        }
+
+        JsonObject body = new JsonObject();
+        body.put("title", title);
+        body.put("results", results);
+        return Response.ok(body);
+    }
+
+    private Response health() {
+        JsonObject body = new JsonObject();
+        body.put("status", "ok");
+        body.put("triples", Main.model.size());
+        body.put("films", Main.titleIndex.size());
+        return Response.ok(body);
+    }
+
+    private static JsonObject recommendation(QuerySolution sol) {
+        JsonObject row = new JsonObject();
+        row.put("title", sol.contains("title") ? sol.getLiteral("title").getString() : "");
+        if (sol.contains("year")) row.put("year", sol.getLiteral("year").getLexicalForm());
+        if (sol.contains("director")) row.put("director", sol.getLiteral("director").getString());
+        row.put("genres", sol.contains("genres") ? sol.getLiteral("genres").getString() : "");
+        if (sol.contains("score")) row.put("score", sol.getLiteral("score").getInt());
+        return row;
+    }
+
+    private static JsonArray strings(Iterable<String> values) {
+        JsonArray array = new JsonArray();
+        for (String value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+
+    private static void addResource(QuerySolutionMap initial, String var, String localName) {
+        if (localName != null && !localName.isEmpty()) {
+            initial.add(var, Main.model.createResource(Main.NS + Main.strip(localName)));
+        }
+    }
+
+    private static void addYear(QuerySolutionMap initial, String var, String year) {
+        if (year != null && !year.isEmpty()) {
+            if (!year.matches("\\d{4}")) {
+                throw new IllegalArgumentException(var + " must be a four-digit year");
+            }
+            initial.add(var, Main.model.createTypedLiteral(year, XSDDatatype.XSDgYear));
+        }
+    }
+
+    private static String requiredParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value.trim();
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue, int min, int max) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int n = Integer.parseInt(value);
+            if (n < min || n > max) {
+                throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.putIfAbsent(name, value);
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JSON.write(bytes, response.body);
+        byte[] body = bytes.toByteArray();
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final JsonValue body;
+
+        private Response(int status, JsonValue body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response ok(JsonValue body) {
+            return new Response(200, body);
+        }
+
+        static Response error(int status, String message) {
+            JsonObject body = new JsonObject();
+            body.put("error", message);
+            return new Response(status, body);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package app;
+
+import ontology.QueryRegistry;
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonObject;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// starts RecommenderServer on a free port and drives it with concurrent clients: recommend pages
+// (following the cursor), assessments, similar films, an unknown title and a bad parameter.
+// every response must have the expected status and parse as JSON.
+// args: [clients=16] [requests per client=50]
+public class ServerSmokeCheck {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int perClient = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        RecommenderServer server = RecommenderServer.start(0);
+        String base = "http://localhost:" + server.getPort();
+        List<String> titles = QueryRegistry.getInstance().select(QueryRegistry.LIST_FILMS, Main.model, rs -> {
+            List<String> list = new ArrayList<>();
+            while (rs.hasNext()) {
+                list.add(rs.next().getLiteral("title").getString());
+            }
+            return list;
+        });
+        System.out.printf("Server on %s, %d films, %d clients x %d requests%n", base, titles.size(), clients, perClient);
+
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int c = 0; c < clients; c++) {
+            Random random = new Random(c);
+            Thread client = new Thread(() -> {
+                try {
+                    ready.await();
+                    for (int i = 0; i < perClient; i++) {
+                        String title = titles.get(random.nextInt(titles.size()));
+                        switch (i % 6) {
+                            case 0 -> {
+                                // a few pages of one listing, each after the previous page's cursor
+                                String next = "";
+                                for (int page = 0; page < 3 && next != null; page++) {
+                                    JsonObject body = get(http, base + "/recommend?genre=Drama&pageSize=5&cursor=" + encode(next),
+                                            200, failures, latencies, requests);
+                                    next = body == null || !body.get("next").isString() ? null : body.get("next").getAsString().value();
+                                }
+                            }
+                            case 1 -> get(http, base + "/recommend?mode=strict&language=English&yearFrom=1990", 200, failures, latencies, requests);
+                            case 2 -> get(http, base + "/assess?title=" + encode(title), 200, failures, latencies, requests);
+                            case 3 -> get(http, base + "/similar?n=5&title=" + encode(title), 200, failures, latencies, requests);
+                            case 4 -> get(http, base + "/similar?title=" + encode("No Such Film " + i), 404, failures, latencies, requests);
+                            default -> get(http, base + "/recommend?yearFrom=abc", 400, failures, latencies, requests);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "client-" + c);
+            threads.add(client);
+            client.start();
+        }
+
+        long start = System.nanoTime();
+        ready.countDown();
+        for (Thread client : threads) {
+            client.join();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        server.stop();
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("%d requests in %d ms (%.0f req/s), latency p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                requests.get(), millis, requests.get() * 1000.0 / Math.max(1, millis),
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0));
+
+        if (!failures.isEmpty()) {
+            System.out.println(failures.size() + " failed requests, first ones:");
+            failures.stream().limit(10).forEach(f -> System.out.println("  " + f));
+            System.exit(1);
+        }
+        System.out.println("All requests returned the expected status and valid JSON.");
+    }
+
+    private static JsonObject get(HttpClient http, String url, int expectedStatus, ConcurrentLinkedQueue<String> failures,
+                                  ConcurrentLinkedQueue<Long> latencies, AtomicInteger requests) throws InterruptedException {
+        requests.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(url)).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            latencies.add(System.nanoTime() - start);
+            JsonObject body = JSON.parse(response.body());
+            if (response.statusCode() != expectedStatus) {
+                failures.add(url + " -> " + response.statusCode() + " " + response.body());
+                return null;
+            }
+            return body;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            failures.add(url + " -> " + e);
+            return null;
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static double percentile(long[] sortedNanos, double p) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(p * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(i, sortedNanos.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,216 @@
+package app;
+
+import cbr.CaseDescription;
+import cbr.CaseEncoder;
+import cbr.JenaOntologyConnector;
+import fuzzy.FuzzyFilmQualitySystem;
+import ontology.FilmGraph;
+import ontology.RecommendIndex;
+import ontology.RecommendationService;
+import ontology.TitleIndex;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import ucm.gaia.jcolibri.cbrcore.CBRCase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// one updater rewrites two extra films in a loop while readers query them: recommendations, case
+// loading, fuzzy data extraction and raw graph reads. every write sets a film's year, rating,
+// budget, box office and director from one counter and moves a marker genre from one film to the
+// other, so a snapshot that mixes two writes shows up as values from different counters, a marker
+// on zero or two films, or a changed triple count.
+// args: [readers=8] [seconds=10]
+public class SnapshotStressCheck {
+
+    private static final String NS = Main.NS;
+    private static final String TITLE_A = "Snapshot Stress A";
+    private static final String TITLE_B = "Snapshot Stress B";
+
+    public static void main(String[] args) throws Exception {
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Main.loadOntology();
+        Model model = Main.model;
+        if (!FilmGraph.isTransactional(model)) {
+            System.out.println("The model is not transactional, reads are expected to tear.");
+        }
+
+        Property imdbRating = model.createProperty(NS, "imdbRating");
+        Property releaseYear = model.createProperty(NS, "releaseYear");
+        Property budget = model.createProperty(NS, "budgetUSD");
+        Property boxOffice = model.createProperty(NS, "boxOfficeUSD");
+        Property directedBy = model.createProperty(NS, "directedBy");
+        Property personName = model.createProperty(NS, "personName");
+        Property hasGenre = model.createProperty(NS, "hasGenre");
+        Resource marker = model.createResource(NS + "SnapshotStressMarker");
+        Resource filmA = model.createResource(NS + "SnapshotStressA");
+        Resource filmB = model.createResource(NS + "SnapshotStressB");
+        Resource director = model.createResource(NS + "SnapshotStressDirector");
+
+        FilmGraph.write(model, () -> {
+            marker.addProperty(RDF.type, model.createResource(NS + "Genre"))
+                    .addProperty(model.createProperty(NS, "genreName"), "SnapshotStressMarker");
+            director.addProperty(RDF.type, model.createResource(NS + "Director"));
+            filmA.addProperty(RDF.type, model.createResource(NS + "Film"))
+                    .addProperty(model.createProperty(NS, "title"), TITLE_A)
+                    .addProperty(hasGenre, marker);
+            filmB.addProperty(RDF.type, model.createResource(NS + "Film"))
+                    .addProperty(model.createProperty(NS, "title"), TITLE_B);
+            set(model, filmA, director, 0);
+            set(model, filmB, director, 0);
+        });
+        long triples = model.size();
+        TitleIndex titles = TitleIndex.build(model);
+        RecommendationService recommendations = RecommendationService.getInstance(model);
+        FuzzyFilmQualitySystem fuzzy = new FuzzyFilmQualitySystem();
+        JenaOntologyConnector connector = new JenaOntologyConnector(model, new CaseEncoder());
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong writes = new AtomicLong();
+        AtomicLong reads = new AtomicLong();
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+
+        Thread updater = new Thread(() -> {
+            for (int n = 1; running.get(); n++) {
+                int counter = n;
+                try {
+                    FilmGraph.write(model, () -> {
+                        for (Property p : List.of(imdbRating, releaseYear, budget, boxOffice, directedBy)) {
+                            filmA.removeAll(p);
+                            filmB.removeAll(p);
+                        }
+                        director.removeAll(personName);
+                        set(model, filmA, director, counter);
+                        set(model, filmB, director, counter);
+                        Resource from = counter % 2 == 1 ? filmA : filmB;
+                        Resource to = counter % 2 == 1 ? filmB : filmA;
+                        model.remove(from, hasGenre, marker);
+                        model.add(to, hasGenre, marker);
+                    });
+                    writes.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failures.add("write " + counter + ": " + e);
+                }
+            }
+        }, "updater");
+
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            int kind = r % 4;
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        String failure = switch (kind) {
+                            case 0 -> checkGraph(model, hasGenre, marker, triples);
+                            case 1 -> checkRecommendations(model, recommendations, marker);
+                            case 2 -> checkCases(connector, filmA.getURI());
+                            default -> checkQuality(fuzzy, model, titles);
+                        };
+                        if (failure != null) {
+                            failures.add(failure);
+                        }
+                        reads.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failures.add(Thread.currentThread().getName() + ": " + e);
+                    }
+                }
+            }, "reader-" + r));
+        }
+
+        long start = System.nanoTime();
+        updater.start();
+        threads.forEach(Thread::start);
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        updater.join();
+        for (Thread reader : threads) {
+            reader.join();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%d writes and %d reads by %d readers in %d ms%n", writes.get(), reads.get(), readers, millis);
+        if (!failures.isEmpty()) {
+            System.out.println(failures.size() + " torn or failed reads, first ones:");
+            failures.stream().limit(10).forEach(f -> System.out.println("  " + f));
+            System.exit(1);
+        }
+        System.out.println("Every read saw one consistent snapshot.");
+    }
+
+    // year, rating, budget, box office and director name all follow from n
+    private static void set(Model model, Resource film, Resource director, int n) {
+        film.addProperty(model.createProperty(NS, "releaseYear"), model.createTypedLiteral(String.valueOf(1900 + n % 100), XSDDatatype.XSDgYear))
+                .addProperty(model.createProperty(NS, "imdbRating"), model.createTypedLiteral(rating(n), XSDDatatype.XSDdecimal))
+                .addProperty(model.createProperty(NS, "budgetUSD"), model.createTypedLiteral(String.valueOf(1_000_000L * (n + 1)), XSDDatatype.XSDdecimal))
+                .addProperty(model.createProperty(NS, "boxOfficeUSD"), model.createTypedLiteral(String.valueOf(2_000_000L * (n + 1)), XSDDatatype.XSDdecimal))
+                .addProperty(model.createProperty(NS, "directedBy"), director);
+        if (!director.hasProperty(model.createProperty(NS, "personName"))) {
+            director.addProperty(model.createProperty(NS, "personName"), "Stress Director " + n);
+        }
+    }
+
+    private static String rating(int n) {
+        return String.valueOf(1 + (n % 90) / 10.0);
+    }
+
+    // two reads of one snapshot: the triple count and the films carrying the marker
+    private static String checkGraph(Model model, Property hasGenre, Resource marker, long triples) {
+        return FilmGraph.read(model, () -> {
+            long size = model.size();
+            int marked = model.listSubjectsWithProperty(hasGenre, marker).toList().size();
+            if (size != triples || marked != 1) {
+                return "graph: " + size + " triples (expected " + triples + "), marker on " + marked + " films";
+            }
+            return null;
+        });
+    }
+
+    private static String checkRecommendations(Model model, RecommendationService recommendations, Resource marker) {
+        QuerySolutionMap bindings = new QuerySolutionMap();
+        bindings.add("G", marker);
+        Set<String> titles = new HashSet<>();
+        recommendations.recommend(RecommendIndex.Mode.STRICT, bindings)
+                .forEachRemaining(sol -> titles.add(sol.getLiteral("title").getString()));
+        return titles.size() == 1 ? null : "recommend: marker films " + titles;
+    }
+
+    private static String checkCases(JenaOntologyConnector connector, String filmIri) {
+        Collection<CBRCase> cases = connector.retrieveCases(List.of(filmIri));
+        if (cases.size() != 1) {
+            return "cases: " + cases.size() + " cases for one film";
+        }
+        CaseDescription desc = (CaseDescription) cases.iterator().next().getDescription();
+        int n = Integer.parseInt(desc.getDirector().substring("Stress Director ".length()));
+        if (desc.getYear() != 1900 + n % 100 || Math.abs(desc.getImdbRating() - Double.parseDouble(rating(n))) > 1e-9) {
+            return "cases: director of write " + n + " with year " + desc.getYear() + " and rating " + desc.getImdbRating();
+        }
+        return null;
+    }
+
+    private static String checkQuality(FuzzyFilmQualitySystem fuzzy, Model model, TitleIndex titles) {
+        FuzzyFilmQualitySystem.FilmQualityResult result = fuzzy.evaluateFilm(TITLE_A, model, titles);
+        if (result == null) {
+            return "quality: film not found";
+        }
+        long n = Math.round(result.budget / 1_000_000) - 1;
+        if (result.releaseYear != 1900 + n % 100 || result.boxOffice != 2 * result.budget
+                || Math.abs(result.imdbRating - Double.parseDouble(rating((int) n))) > 1e-9) {
+            return "quality: budget of write " + n + " with year " + result.releaseYear + ", rating "
+                    + result.imdbRating + " and box office " + result.boxOffice;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,81 @@
+package app;
+
+import cbr.CaseBaseService;
+import fuzzy.FuzzyEngine;
+import ontology.QueryRegistry;
+import ontology.RecommendationService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// startup stages, run in the background so the menu shows up right away.
+// ontology, query registry and fuzzy engine start at once, the case base follows when the
+// ontology and queries are ready and the recommendation service when the ontology is.
+// every request waits only for the stages it uses
+class Startup {
+
+    final CompletableFuture<Void> ontology;
+    final CompletableFuture<QueryRegistry> queries;
+    final CompletableFuture<FuzzyEngine> fuzzy;
+    final CompletableFuture<CaseBaseService> caseBase;
+    final CompletableFuture<RecommendationService> recommendations;
+
+    private final long start = System.nanoTime();
+
+    private Startup(ExecutorService executor) {
+        ontology = stage("ontology", CompletableFuture.runAsync(() -> {
+            try {
+                Main.loadOntology();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor));
+        queries = stage("query registry", CompletableFuture.supplyAsync(QueryRegistry::getInstance, executor));
+        fuzzy = stage("fuzzy engine", CompletableFuture.supplyAsync(FuzzyEngine::getInstance, executor));
+        caseBase = stage("case base", ontology.thenCombineAsync(queries,
+                (ignored, registry) -> CaseBaseService.getInstance(Main.model), executor));
+        recommendations = stage("recommendations",
+                ontology.thenApplyAsync(ignored -> RecommendationService.getInstance(Main.model), executor));
+    }
+
+    static Startup begin() {
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "startup-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Startup startup = new Startup(executor);
+        CompletableFuture.allOf(startup.ontology, startup.queries, startup.fuzzy, startup.caseBase,
+                startup.recommendations).whenComplete((ignored, e) -> executor.shutdown());
+        return startup;
+    }
+
+    // blocks until the stage is done and rethrows its failure
+    static <T> T await(CompletableFuture<T> stage, String name) {
+        if (!stage.isDone()) {
+            System.out.println("Waiting for " + name + "...");
+        }
+        try {
+            return stage.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IllegalStateException("Startup stage failed: " + name + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    private <T> CompletableFuture<T> stage(String name, CompletableFuture<T> future) {
+        return future.whenComplete((value, e) -> {
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (e != null) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                System.err.println("Startup stage " + name + " failed after " + millis + " ms: " + cause.getMessage());
+            } else {
+                System.out.println("[startup] " + name + " ready after " + millis + " ms");
+            }
+        });
+    }
+}
@@ -0,0 +1,139 @@
+package cbr;
+
+import ontology.FilmGraph;
+import ontology.TitleIndex;
+import org.apache.jena.graph.GraphEvents;
+import org.apache.jena.rdf.listeners.StatementListener;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// collects the films whose cases a model change may have touched: subjects of film statements
+// the CASE_BASE query reads, plus every film linked to a director, actor, genre or language whose
+// name changed. the listener only records subjects, the links are followed when the changes are
+// drained, so a bulk delete never has the model read from inside its own notification.
+// changes heard inside an uncommitted FilmGraph write are held back until its COMMITTED, so a
+// reader never re-reads a film from the snapshot before the change and then forgets it
+class CaseBaseChangeTracker extends StatementListener {
+
+    private static final String NS = TitleIndex.NS;
+
+    private final Model model;
+    private final Set<Property> filmProperties;
+    private final Set<Property> nameProperties;
+    private final List<Property> links;
+
+    private Set<Resource> films = new HashSet<>();
+    private Set<Resource> named = new HashSet<>();
+    private boolean reloadAll;
+
+    // heard inside the write in progress, not committed yet
+    private final Set<Resource> pendingFilms = new HashSet<>();
+    private final Set<Resource> pendingNamed = new HashSet<>();
+    private boolean pendingReloadAll;
+
+    CaseBaseChangeTracker(Model model) {
+        this.model = model;
+        filmProperties = Set.of(RDF.type,
+                model.createProperty(NS, "title"),
+                model.createProperty(NS, "releaseYear"),
+                model.createProperty(NS, "imdbRating"),
+                model.createProperty(NS, "directedBy"),
+                model.createProperty(NS, "hasGenre"),
+                model.createProperty(NS, "hasActor"),
+                model.createProperty(NS, "spokenInLanguage"));
+        nameProperties = Set.of(
+                model.createProperty(NS, "personName"),
+                model.createProperty(NS, "genreName"),
+                model.createProperty(NS, "languageName"));
+        links = List.of(
+                model.createProperty(NS, "directedBy"),
+                model.createProperty(NS, "hasGenre"),
+                model.createProperty(NS, "hasActor"),
+                model.createProperty(NS, "spokenInLanguage"));
+    }
+
+    @Override
+    public void addedStatement(Statement s) {
+        record(s);
+    }
+
+    @Override
+    public void removedStatement(Statement s) {
+        record(s);
+    }
+
+    // pattern removes also report each statement, but clearing the whole model reports nothing else
+    @Override
+    public synchronized void notifyEvent(Model m, Object event) {
+        if (event == GraphEvents.removeAll) {
+            if (FilmGraph.isUncommitted(model)) {
+                pendingReloadAll = true;
+            } else {
+                reloadAll = true;
+            }
+        } else if (event == FilmGraph.COMMITTED) {
+            // an aborted write lands here too, its films are just re-read unchanged
+            films.addAll(pendingFilms);
+            named.addAll(pendingNamed);
+            reloadAll |= pendingReloadAll;
+            pendingFilms.clear();
+            pendingNamed.clear();
+            pendingReloadAll = false;
+        }
+    }
+
+    synchronized boolean hasChanges() {
+        return reloadAll || !films.isEmpty() || !named.isEmpty();
+    }
+
+    // IRIs of the films to reload and forgets them, null when the whole case base has to be reloaded
+    Set<String> drain(Model model) {
+        Set<Resource> changedFilms;
+        Set<Resource> changedNames;
+        synchronized (this) {
+            if (reloadAll) {
+                reloadAll = false;
+                films = new HashSet<>();
+                named = new HashSet<>();
+                return null;
+            }
+            changedFilms = films;
+            changedNames = named;
+            films = new HashSet<>();
+            named = new HashSet<>();
+        }
+
+        Set<String> filmIris = new HashSet<>();
+        for (Resource film : changedFilms) {
+            if (film.isURIResource()) {
+                filmIris.add(film.getURI());
+            }
+        }
+        for (Resource resource : changedNames) {
+            for (Property link : links) {
+                model.listSubjectsWithProperty(link, resource).forEachRemaining(film -> {
+                    if (film.isURIResource()) {
+                        filmIris.add(film.getURI());
+                    }
+                });
+            }
+        }
+        return filmIris;
+    }
+
+    private synchronized void record(Statement s) {
+        boolean uncommitted = FilmGraph.isUncommitted(model);
+        if (filmProperties.contains(s.getPredicate())) {
+            (uncommitted ? pendingFilms : films).add(s.getSubject());
+        } else if (nameProperties.contains(s.getPredicate())) {
+            (uncommitted ? pendingNamed : named).add(s.getSubject());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package cbr;
+
+import org.apache.jena.rdf.model.Model;
+
+import java.util.List;
+
+public class CaseBaseService {
+
+    private static volatile CaseBaseService instance;
+
+    private final CaseBasedReasoning cbr;
+    private final long loadMillis;
+
+    private CaseBaseService(Model model) {
+        long start = System.nanoTime();
+        this.cbr = new CaseBasedReasoning(model);
+        this.loadMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println("Case base loaded: " + cbr.getCaseCount() + " cases in " + loadMillis + " ms");
+    }
+
+    // process-wide case base, loaded on first use and shared by all callers afterwards
+    public static CaseBaseService getInstance(Model model) {
+        CaseBaseService local = instance;
+        if (local == null) {
+            synchronized (CaseBaseService.class) {
+                local = instance;
+                if (local == null) {
+                    local = new CaseBaseService(model);
+                    instance = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    public List<CaseBasedReasoning.SimilarFilm> findSimilarFilms(String targetFilmTitle, int topN) {
+        return cbr.findSimilarFilms(targetFilmTitle, topN);
+    }
+
+    // counted on the live case base, after the pending model changes are applied
+    public CatalogStats getStats() {
+        return new CatalogStats(cbr.getCaseCount(), loadMillis);
+    }
+
+    public static class CatalogStats {
+        private final int caseCount;
+        private final long loadMillis;
+
+        public CatalogStats(int caseCount, long loadMillis) {
+            this.caseCount = caseCount;
+            this.loadMillis = loadMillis;
+        }
+
+        // cases, not films: a film with several titles or bnode copies has one case each
+        public int getCaseCount() { return caseCount; }
+        public long getLoadMillis() { return loadMillis; }
+    }
+}
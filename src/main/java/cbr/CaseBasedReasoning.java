@@ -1,71 +1,170 @@
 package cbr;
 
+import metrics.SimilarFilmsEvent;
+import ontology.FilmGraph;
 import org.apache.jena.rdf.model.Model;
 import ucm.gaia.jcolibri.exception.ExecutionException;
 import ucm.gaia.jcolibri.method.retrieve.RetrievalResult;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class CaseBasedReasoning {
 
-    private FilmCbrApplication cbrApp;
+    public static final String NEIGHBOR_TABLE_PATH = System.getProperty("cbr.neighborTable", ".cache/neighbors.bin");
+
+    private final Model model;
+    private final FilmCbrApplication cbrApp;
+    private final CaseBaseChangeTracker changes;
+    private NeighborTable neighborTable;
 
     public CaseBasedReasoning(Model model) {
+        this.model = model;
         this.cbrApp = new FilmCbrApplication(model);
+        // registered before the load so nothing changed meanwhile is missed
+        this.changes = new CaseBaseChangeTracker(model);
+        model.register(changes);
         try {
             cbrApp.configure();
             cbrApp.preCycle();
         } catch (ExecutionException e) {
             e.printStackTrace();
         }
+        openNeighborTable(Path.of(NEIGHBOR_TABLE_PATH));
     }
 
-    public List<SimilarFilm> findSimilarFilms(String targetFilmTitle, int topN) {
+    // precomputed neighbors are used only if they were built from this exact case base
+    public void openNeighborTable(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
         try {
-            Collection<RetrievalResult> results = cbrApp.findSimilarFilms(targetFilmTitle, topN);
-
-            if (results == null) {
-                return Collections.emptyList();
+            NeighborTable table = NeighborTable.open(file);
+            if (table.getFingerprint() != cbrApp.getFingerprint()) {
+                System.out.println("Neighbor table " + file + " is stale, using live scoring.");
+                return;
             }
+            neighborTable = table;
+            System.out.println("Loaded neighbor table " + file + " (top " + table.getK() + ")");
+        } catch (IOException e) {
+            System.err.println("Cannot open neighbor table " + file + ": " + e.getMessage());
+        }
+    }
 
-            List<SimilarFilm> similarFilms = new ArrayList<>();
+    public void writeNeighborTable(Path file, int k) throws IOException {
+        cbrApp.writeNeighborTable(file, k);
+    }
 
-            for (RetrievalResult result : results) {
-                CaseDescription desc = (CaseDescription) result.get_case().getDescription();
+    public int getCaseCount() {
+        applyChanges();
+        return cbrApp.getCaseCount();
+    }
 
-                // converts jCOLIBRI similarity (0-1) to score 0-100
-                double score = result.getEval() * 100;
+    // CRUD on the films behind the cases; the case base follows through the change events
+    public JenaOntologyConnector getConnector() {
+        return cbrApp.getConnector();
+    }
 
-                SimilarFilm film = new SimilarFilm(
-                        desc.getTitle(),
-                        score,
-                        desc.getYear(),
-                        desc.getImdbRating(),
-                        desc.getDirector(),
-                        parseSet(desc.getGenres()),
-                        parseSet(desc.getActors()),
-                        parseSet(desc.getLanguages())
-                );
+    // brings the case base up to date with the model changes committed since the last call.
+    // the changed films are found and re-read on one snapshot.
+    // a neighbor table built before stops matching the fingerprint and live scoring takes over
+    public void applyChanges() {
+        if (!changes.hasChanges()) {
+            return;
+        }
+        synchronized (this) {
+            long start = System.nanoTime();
+            FilmGraph.read(model, () -> {
+                Set<String> films = changes.drain(model);
+                if (films == null) {
+                    cbrApp.reloadCases();
+                    System.out.println("Case base reloaded: " + cbrApp.getCaseCount() + " cases in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms");
+                } else if (!films.isEmpty()) {
+                    cbrApp.refreshFilms(films);
+                    System.out.println("Case base updated: " + films.size() + " films re-read in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
+                return null;
+            });
+        }
+    }
 
-                similarFilms.add(film);
+    public List<SimilarFilm> findSimilarFilms(String targetFilmTitle, int topN) {
+        SimilarFilmsEvent event = new SimilarFilmsEvent();
+        event.begin();
+        long start = System.nanoTime();
+        applyChanges();
+        long updated = System.nanoTime();
+        long retrieved = updated;
+        long decoded = updated;
+
+        String source = "live";
+        List<SimilarFilm> similarFilms = Collections.emptyList();
+        try {
+            Collection<RetrievalResult> results = null;
+            NeighborTable table = neighborTable;
+            if (table != null) {
+                results = cbrApp.findSimilarFilms(targetFilmTitle, topN, table);
+                source = "neighborTable";
             }
+            // no table, stale table or topN above what was stored
+            if (results == null) {
+                source = "live";
+                results = cbrApp.findSimilarFilms(targetFilmTitle, topN);
+            }
+            retrieved = System.nanoTime();
 
-            return similarFilms;
-
+            if (results != null) {
+                similarFilms = toSimilarFilms(results);
+            }
+            decoded = System.nanoTime();
         } catch (ExecutionException e) {
             e.printStackTrace();
-            return Collections.emptyList();
         }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.title = targetFilmTitle;
+            event.topN = topN;
+            event.source = source;
+            event.caseCount = cbrApp.getCaseCount();
+            event.resultCount = similarFilms.size();
+            event.caseBaseUpdate = updated - start;
+            event.retrieval = retrieved - updated;
+            event.decoding = decoded - retrieved;
+            event.commit();
+        }
+        return similarFilms;
     }
 
-    private Set<String> parseSet(String string) {
-        if (string == null || string.isEmpty()) {
-            return new HashSet<>();
+    private List<SimilarFilm> toSimilarFilms(Collection<RetrievalResult> results) {
+        CaseEncoder encoder = cbrApp.getEncoder();
+        List<SimilarFilm> similarFilms = new ArrayList<>();
+
+        for (RetrievalResult result : results) {
+            CaseDescription desc = (CaseDescription) result.get_case().getDescription();
+
+            // converts jCOLIBRI similarity (0-1) to score 0-100
+            double score = result.getEval() * 100;
+
+            SimilarFilm film = new SimilarFilm(
+                    desc.getTitle(),
+                    score,
+                    desc.getYear(),
+                    desc.getImdbRating(),
+                    desc.getDirector(),
+                    encoder.getGenres().decodeSet(desc.getGenreIds()),
+                    encoder.getActors().decodeSet(desc.getActorIds()),
+                    encoder.getLanguages().decodeSet(desc.getLanguageIds())
+            );
+
+            similarFilms.add(film);
         }
-        return Arrays.stream(string.split(","))
-                .map(String::trim)
-                .collect(Collectors.toSet());
+
+        return similarFilms;
     }
 
     public static class SimilarFilm {
@@ -5,6 +5,7 @@ import ucm.gaia.jcolibri.cbrcore.CaseComponent;
 
 public class CaseDescription implements CaseComponent {
     private String id;
+    private String filmIri;
     private String title;
     private Integer year;
     private Double imdbRating;
@@ -12,10 +13,22 @@ public class CaseDescription implements CaseComponent {
     private String genres;
     private String actors;
     private String languages;
+    // year and rating were missing from the film and hold the defaults the similarity needs
+    private boolean yearDefaulted;
+    private boolean imdbRatingDefaulted;
+
+    // dictionary-encoded features, see CaseEncoder
+    private Integer directorId;
+    private int[] genreIds;
+    private int[] actorIds;
+    private int[] languageIds;
 
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
 
+    public String getFilmIri() { return filmIri; }
+    public void setFilmIri(String filmIri) { this.filmIri = filmIri; }
+
     public String getTitle() { return title; }
     public void setTitle(String title) { this.title = title; }
 
@@ -25,6 +38,12 @@ public class CaseDescription implements CaseComponent {
     public Double getImdbRating() { return imdbRating; }
     public void setImdbRating(Double imdbRating) { this.imdbRating = imdbRating; }
 
+    public boolean isYearDefaulted() { return yearDefaulted; }
+    public void setYearDefaulted(boolean yearDefaulted) { this.yearDefaulted = yearDefaulted; }
+
+    public boolean isImdbRatingDefaulted() { return imdbRatingDefaulted; }
+    public void setImdbRatingDefaulted(boolean imdbRatingDefaulted) { this.imdbRatingDefaulted = imdbRatingDefaulted; }
+
     public String getDirector() { return director; }
     public void setDirector(String director) { this.director = director; }
 
@@ -37,6 +56,18 @@ public class CaseDescription implements CaseComponent {
     public String getLanguages() { return languages; }
     public void setLanguages(String languages) { this.languages = languages; }
 
+    public Integer getDirectorId() { return directorId; }
+    public void setDirectorId(Integer directorId) { this.directorId = directorId; }
+
+    public int[] getGenreIds() { return genreIds; }
+    public void setGenreIds(int[] genreIds) { this.genreIds = genreIds; }
+
+    public int[] getActorIds() { return actorIds; }
+    public void setActorIds(int[] actorIds) { this.actorIds = actorIds; }
+
+    public int[] getLanguageIds() { return languageIds; }
+    public void setLanguageIds(int[] languageIds) { this.languageIds = languageIds; }
+
     @Override
     public Attribute getIdAttribute() {
         return new Attribute("id", this.getClass());
@@ -0,0 +1,22 @@
+package cbr;
+
+public class CaseEncoder {
+
+    private final FeatureDictionary genres = new FeatureDictionary();
+    private final FeatureDictionary actors = new FeatureDictionary();
+    private final FeatureDictionary languages = new FeatureDictionary();
+    private final FeatureDictionary directors = new FeatureDictionary();
+
+    // fills the int id attributes from the comma-joined strings
+    public void encode(CaseDescription desc) {
+        desc.setGenreIds(genres.encodeSet(desc.getGenres()));
+        desc.setActorIds(actors.encodeSet(desc.getActors()));
+        desc.setLanguageIds(languages.encodeSet(desc.getLanguages()));
+        desc.setDirectorId(directors.intern(desc.getDirector() == null ? "" : desc.getDirector()));
+    }
+
+    public FeatureDictionary getGenres() { return genres; }
+    public FeatureDictionary getActors() { return actors; }
+    public FeatureDictionary getLanguages() { return languages; }
+    public FeatureDictionary getDirectors() { return directors; }
+}
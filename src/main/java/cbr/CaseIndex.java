@@ -0,0 +1,319 @@
+package cbr;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import ucm.gaia.jcolibri.cbrcore.CBRCase;
+
+// posting lists from genre / director / actor / language ids to case positions, used to
+// score only the cases that can still make the top-K (MaxScore pruning). the lists are
+// patched in place when single cases come and go
+public class CaseIndex {
+
+    private static final int GENRE = 0;
+    private static final int DIRECTOR = 1;
+    private static final int ACTOR = 2;
+    private static final int LANGUAGE = 3;
+
+    private static final int[] EMPTY = new int[0];
+
+    // slack for floating point differences between the bound and the real score
+    private static final double EPSILON = 1e-9;
+
+    private final int[][][] postings = new int[4][][];
+    private final double[] weights = new double[4];
+    private final double imdbWeight;
+    private final double yearWeight;
+    private final double totalWeight;
+
+    public interface CaseScorer {
+        double score(CBRCase cbrCase);
+    }
+
+    // the first size cases of the array
+    public CaseIndex(CBRCase[] cases, int size, CaseEncoder encoder) {
+        weights[GENRE] = FilmCbrApplication.GENRE_WEIGHT;
+        weights[DIRECTOR] = FilmCbrApplication.DIRECTOR_WEIGHT;
+        weights[ACTOR] = FilmCbrApplication.ACTOR_WEIGHT;
+        weights[LANGUAGE] = FilmCbrApplication.LANGUAGE_WEIGHT;
+        imdbWeight = FilmCbrApplication.IMDB_WEIGHT;
+        yearWeight = FilmCbrApplication.YEAR_WEIGHT;
+        totalWeight = weights[GENRE] + weights[DIRECTOR] + weights[ACTOR] + weights[LANGUAGE]
+                + imdbWeight + yearWeight;
+
+        postings[GENRE] = buildPostings(cases, size, GENRE, encoder.getGenres().size());
+        postings[DIRECTOR] = buildPostings(cases, size, DIRECTOR, encoder.getDirectors().size());
+        postings[ACTOR] = buildPostings(cases, size, ACTOR, encoder.getActors().size());
+        postings[LANGUAGE] = buildPostings(cases, size, LANGUAGE, encoder.getLanguages().size());
+    }
+
+    // only the lists of the case's own ids change
+    public void add(int position, CaseDescription desc) {
+        for (int kind = GENRE; kind <= LANGUAGE; kind++) {
+            for (int id : ids(desc, kind)) {
+                int[][] lists = lists(kind, id);
+                lists[id] = insert(lists[id], position);
+            }
+        }
+    }
+
+    public void remove(int position, CaseDescription desc) {
+        for (int kind = GENRE; kind <= LANGUAGE; kind++) {
+            for (int id : ids(desc, kind)) {
+                int[][] lists = lists(kind, id);
+                lists[id] = CaseIndex.remove(lists[id], position);
+            }
+        }
+    }
+
+    // MaxScore over the query's posting lists, walked in position order. the lists are sorted by
+    // the most one of them can add to a score; once the k-th best score is out of reach of a case
+    // found only in the cheapest lists (languages, big genres), those become non-essential:
+    // candidates come from the essential lists alone, and the others are only probed for a
+    // candidate whose bound still makes the cut. while the k-th best score is within what year
+    // and rating give on their own, every case is a candidate.
+    // positions the skip test accepts are never offered, e.g. every case of the query's film
+    public TopKCollector search(CBRCase[] cases, int size, int queryPosition, int topN,
+                                IntPredicate skip, CaseScorer scorer) {
+        CaseDescription query = (CaseDescription) cases[queryPosition].getDescription();
+        TopKCollector topK = new TopKCollector(topN);
+
+        int n = query.getGenreIds().length + 1 + query.getActorIds().length + query.getLanguageIds().length;
+        int[][] lists = new int[n][];
+        int[] kinds = new int[n];
+        double[] maxScores = new double[n];
+        int count = 0;
+        for (int kind = GENRE; kind <= LANGUAGE; kind++) {
+            int[] ids = ids(query, kind);
+            for (int id : ids) {
+                lists[count] = id < postings[kind].length ? postings[kind][id] : EMPTY;
+                kinds[count] = kind;
+                // a first shared id is worth half the weight, a second one the other half
+                maxScores[count++] = ids.length == 1 ? weights[kind] : weights[kind] / 2;
+            }
+        }
+        sortLists(lists, kinds, maxScores);
+
+        // bounds[e]: the most a case found only in lists[0..e) can score, year and rating included
+        double[] bounds = new double[n + 1];
+        bounds[0] = imdbWeight + yearWeight;
+        for (int i = 0; i < n; i++) {
+            bounds[i + 1] = bounds[i] + maxScores[i];
+        }
+
+        int[] cursors = new int[n];
+        int[] hits = new int[4];
+        int essential = 0;          // lists[0..essential) are non-essential
+        boolean everyCase = true;
+        int next = 0;
+
+        while (true) {
+            int position;
+            if (everyCase) {
+                if (next >= size) {
+                    break;
+                }
+                position = next;
+            } else {
+                position = Integer.MAX_VALUE;
+                for (int i = essential; i < n; i++) {
+                    cursors[i] = advance(lists[i], cursors[i], next);
+                    if (cursors[i] < lists[i].length && lists[i][cursors[i]] < position) {
+                        position = lists[i][cursors[i]];
+                    }
+                }
+                if (position == Integer.MAX_VALUE) {
+                    break;
+                }
+            }
+            next = position + 1;
+            if (skip.test(position)) {
+                continue;
+            }
+
+            double threshold = topK.isFull() ? topK.threshold() : Double.NEGATIVE_INFINITY;
+            CaseDescription desc = (CaseDescription) cases[position].getDescription();
+            double numeric = numericBound(query, desc);
+
+            Arrays.fill(hits, 0);
+            countHits(lists, kinds, cursors, essential, n, position, hits);
+            if (essential > 0) {
+                double bound = featureScore(query, hits) + numeric + bounds[essential] - bounds[0];
+                if (bound / totalWeight + EPSILON < threshold) {
+                    continue;
+                }
+                countHits(lists, kinds, cursors, 0, essential, position, hits);
+            }
+            if ((featureScore(query, hits) + numeric) / totalWeight + EPSILON < threshold) {
+                continue;
+            }
+
+            CBRCase cbrCase = cases[position];
+            topK.offer(cbrCase, position, scorer.score(cbrCase));
+
+            if (topK.isFull()) {
+                threshold = topK.threshold();
+                everyCase = bounds[0] / totalWeight + EPSILON >= threshold;
+                while (essential < n && bounds[essential + 1] / totalWeight + EPSILON < threshold) {
+                    essential++;
+                }
+            }
+        }
+
+        return topK;
+    }
+
+    // moves the cursors of lists[from..to) up to the position and counts the lists that have it
+    private static void countHits(int[][] lists, int[] kinds, int[] cursors, int from, int to, int position, int[] hits) {
+        for (int i = from; i < to; i++) {
+            cursors[i] = advance(lists[i], cursors[i], position);
+            if (cursors[i] < lists[i].length && lists[i][cursors[i]] == position) {
+                hits[kinds[i]]++;
+            }
+        }
+    }
+
+    // first index from the cursor on whose position is at least the target, by galloping
+    private static int advance(int[] list, int cursor, int target) {
+        if (cursor >= list.length || list[cursor] >= target) {
+            return cursor;
+        }
+        int lo = cursor;
+        int step = 1;
+        int hi = cursor + 1;
+        while (hi < list.length && list[hi] < target) {
+            lo = hi;
+            step <<= 1;
+            hi = lo + step;
+        }
+        hi = Math.min(hi, list.length);
+        // list[lo] < target, and list[hi] >= target unless hi is the end
+        while (lo + 1 < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (list[mid] < target) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    // cheapest lists first, the longer one first among equally cheap lists. queries have a few
+    // dozen lists at most, so insertion sort on the parallel arrays does
+    private static void sortLists(int[][] lists, int[] kinds, double[] maxScores) {
+        for (int i = 1; i < lists.length; i++) {
+            for (int j = i; j > 0; j--) {
+                boolean before = maxScores[j] < maxScores[j - 1]
+                        || (maxScores[j] == maxScores[j - 1] && lists[j].length > lists[j - 1].length);
+                if (!before) {
+                    break;
+                }
+                int[] list = lists[j]; lists[j] = lists[j - 1]; lists[j - 1] = list;
+                int kind = kinds[j]; kinds[j] = kinds[j - 1]; kinds[j - 1] = kind;
+                double max = maxScores[j]; maxScores[j] = maxScores[j - 1]; maxScores[j - 1] = max;
+            }
+        }
+    }
+
+    // weighted genre / director / actor / language similarity from the number of shared ids,
+    // same rule as EncodedSetSimilarity and Equal
+    private double featureScore(CaseDescription query, int[] hits) {
+        return weights[GENRE] * setSimilarity(query.getGenreIds().length, hits[GENRE])
+                + weights[DIRECTOR] * (hits[DIRECTOR] > 0 ? 1.0 : 0.0)
+                + weights[ACTOR] * setSimilarity(query.getActorIds().length, hits[ACTOR])
+                + weights[LANGUAGE] * setSimilarity(query.getLanguageIds().length, hits[LANGUAGE]);
+    }
+
+    private static double setSimilarity(int targetCount, int commonCount) {
+        if (targetCount == 0 || commonCount == 0) {
+            return 0.0;
+        }
+        if (targetCount == 1 || commonCount >= 2) {
+            return 1.0;
+        }
+        return 0.5;
+    }
+
+    // Interval(10) on the IMDb rating and Interval(100) on the year, 1.0 when a value is missing
+    private double numericBound(CaseDescription query, CaseDescription desc) {
+        double imdbSim = 1.0;
+        if (query.getImdbRating() != null && desc.getImdbRating() != null) {
+            imdbSim = 1 - Math.abs(query.getImdbRating() - desc.getImdbRating()) / FilmCbrApplication.IMDB_INTERVAL;
+        }
+        double yearSim = 1.0;
+        if (query.getYear() != null && desc.getYear() != null) {
+            yearSim = 1 - Math.abs(query.getYear() - desc.getYear()) / (double) FilmCbrApplication.YEAR_INTERVAL;
+        }
+        return imdbWeight * imdbSim + yearWeight * yearSim;
+    }
+
+    // the lists of one kind, grown when a new case brought an id the index hasn't seen
+    private int[][] lists(int kind, int id) {
+        int[][] lists = postings[kind];
+        if (id >= lists.length) {
+            int old = lists.length;
+            lists = Arrays.copyOf(lists, Math.max(id + 1, old * 2));
+            Arrays.fill(lists, old, lists.length, EMPTY);
+            postings[kind] = lists;
+        }
+        return lists;
+    }
+
+    private static int[][] buildPostings(CBRCase[] cases, int size, int kind, int idCount) {
+        int[] counts = new int[idCount];
+        for (int position = 0; position < size; position++) {
+            for (int id : ids((CaseDescription) cases[position].getDescription(), kind)) {
+                counts[id]++;
+            }
+        }
+
+        int[][] result = new int[idCount][];
+        for (int id = 0; id < idCount; id++) {
+            result[id] = new int[counts[id]];
+        }
+
+        int[] fill = new int[idCount];
+        for (int position = 0; position < size; position++) {
+            for (int id : ids((CaseDescription) cases[position].getDescription(), kind)) {
+                result[id][fill[id]++] = position;
+            }
+        }
+        return result;
+    }
+
+    private static int[] ids(CaseDescription desc, int kind) {
+        return switch (kind) {
+            case GENRE -> desc.getGenreIds();
+            case DIRECTOR -> new int[] { desc.getDirectorId() };
+            case ACTOR -> desc.getActorIds();
+            default -> desc.getLanguageIds();
+        };
+    }
+
+    // a sorted position list with the value added, as a new array
+    static int[] insert(int[] list, int value) {
+        int at = Arrays.binarySearch(list, value);
+        if (at >= 0) {
+            return list;
+        }
+        at = -at - 1;
+        int[] result = new int[list.length + 1];
+        System.arraycopy(list, 0, result, 0, at);
+        result[at] = value;
+        System.arraycopy(list, at, result, at + 1, list.length - at);
+        return result;
+    }
+
+    // a sorted position list without the value, as a new array
+    static int[] remove(int[] list, int value) {
+        int at = Arrays.binarySearch(list, value);
+        if (at < 0) {
+            return list;
+        }
+        int[] result = new int[list.length - 1];
+        System.arraycopy(list, 0, result, 0, at);
+        System.arraycopy(list, at + 1, result, at, list.length - at - 1);
+        return result;
+    }
+}
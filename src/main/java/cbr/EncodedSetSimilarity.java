@@ -0,0 +1,50 @@
+package cbr;
+
+import ucm.gaia.jcolibri.exception.NoApplicableSimilarityFunctionException;
+import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.LocalSimilarityFunction;
+
+// SetSimilarity over sorted, distinct id arrays produced by FeatureDictionary.encodeSet
+public class EncodedSetSimilarity implements LocalSimilarityFunction {
+
+    @Override
+    public double compute(Object value1, Object value2) throws NoApplicableSimilarityFunctionException {
+        if (!(value1 instanceof int[]) || !(value2 instanceof int[])) {
+            return 0;
+        }
+
+        int[] target = (int[]) value1;      // target film
+        int[] candidate = (int[]) value2;   // candidate film
+
+        if (target.length == 0 || candidate.length == 0) {
+            return 0;
+        }
+
+        // 1 common item is enough for a single-item target, 2 for everything else
+        int needed = target.length == 1 ? 1 : 2;
+        int commonCount = 0;
+
+        int i = 0, j = 0;
+        while (i < target.length && j < candidate.length && commonCount < needed) {
+            if (target[i] == candidate[j]) {
+                commonCount++;
+                i++;
+                j++;
+            } else if (target[i] < candidate[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        // same 0 / 0.5 / 1.0 rule as SetSimilarity
+        if (commonCount >= needed) {
+            return 1.0;
+        }
+        return commonCount == 1 ? 0.5 : 0.0;
+    }
+
+    @Override
+    public boolean isApplicable(Object value1, Object value2) {
+        return value1 instanceof int[] && value2 instanceof int[];
+    }
+}
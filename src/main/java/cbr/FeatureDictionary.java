@@ -0,0 +1,67 @@
+package cbr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class FeatureDictionary {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    public synchronized int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    public synchronized String getName(int id) {
+        return names.get(id);
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    // same tokenizing as SetSimilarity: split on commas, trim, drop duplicates
+    public int[] encodeSet(String joined) {
+        if (joined == null || joined.isEmpty()) {
+            return EMPTY;
+        }
+
+        String[] items = joined.split(",");
+        int[] result = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            result[i] = intern(items[i].trim());
+        }
+
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return distinct == result.length ? result : Arrays.copyOf(result, distinct);
+    }
+
+    public Set<String> decodeSet(int[] encoded) {
+        Set<String> result = new LinkedHashSet<>();
+        if (encoded != null) {
+            for (int id : encoded) {
+                result.add(getName(id));
+            }
+        }
+        return result;
+    }
+}
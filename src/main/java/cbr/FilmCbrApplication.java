@@ -1,33 +1,78 @@
 package cbr;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import ontology.TitleIndex;
 import org.apache.jena.rdf.model.Model;
-import ucm.gaia.jcolibri.casebase.LinealCaseBase;
 import ucm.gaia.jcolibri.cbraplications.StandardCBRApplication;
 import ucm.gaia.jcolibri.cbrcore.Attribute;
 import ucm.gaia.jcolibri.cbrcore.CBRCase;
 import ucm.gaia.jcolibri.cbrcore.CBRCaseBase;
 import ucm.gaia.jcolibri.cbrcore.CBRQuery;
-import ucm.gaia.jcolibri.cbrcore.Connector;
+import ucm.gaia.jcolibri.cbrcore.CaseComponent;
 import ucm.gaia.jcolibri.exception.ExecutionException;
 import ucm.gaia.jcolibri.method.retrieve.RetrievalResult;
 import ucm.gaia.jcolibri.method.retrieve.NNretrieval.NNConfig;
-import ucm.gaia.jcolibri.method.retrieve.NNretrieval.NNScoringMethod;
+import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.GlobalSimilarityFunction;
 import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.global.Average;
 import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.local.Equal;
 import ucm.gaia.jcolibri.method.retrieve.NNretrieval.similarity.local.Interval;
-import ucm.gaia.jcolibri.method.retrieve.selection.SelectCases;
 
 public class FilmCbrApplication implements StandardCBRApplication {
 
-    Connector _connector;
-    CBRCaseBase _caseBase;
+    static final double GENRE_WEIGHT = 0.28;
+    static final double DIRECTOR_WEIGHT = 0.23;
+    static final double ACTOR_WEIGHT = 0.19;
+    static final double IMDB_WEIGHT = 0.15;
+    static final double YEAR_WEIGHT = 0.10;
+    static final double LANGUAGE_WEIGHT = 0.05;
+
+    static final int IMDB_INTERVAL = 10;
+    static final int YEAR_INTERVAL = 100;
+
+    // scoring covers the whole retrieval, heap offers included; top-K is ranking the kept cases
+    private static final LatencyHistogram BUILD_LATENCY = Metrics.histogram(Metrics.CASE_BASE_BUILD);
+    private static final LatencyHistogram REFRESH_LATENCY = Metrics.histogram(Metrics.CASE_BASE_REFRESH);
+    private static final LatencyHistogram SIMILARITY_LATENCY = Metrics.histogram(Metrics.SIMILARITY);
+    private static final LatencyHistogram TOP_K_LATENCY = Metrics.histogram(Metrics.TOP_K);
+    private static final LatencyHistogram NEIGHBOR_LATENCY = Metrics.histogram(Metrics.NEIGHBOR_LOOKUP);
+
+    public enum RetrievalMode {
+        SCAN,       // score every case (in parallel on large catalogs)
+        INDEXED     // score only cases the inverted index cannot rule out
+    }
+
+    JenaOntologyConnector _connector;
     NNConfig simConfig;
+    CaseEncoder encoder;
+    // the live case base: loaded by preCycle, then patched in place by refreshFilms. retrievals
+    // read it under the read lock, loads and refreshes change it under the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private CaseView view;
+    RetrievalMode retrievalMode = RetrievalMode.valueOf(System.getProperty("cbr.retrieval", "INDEXED"));
+
+    // catalogs smaller than this are scored on the calling thread
+    int parallelThreshold = Integer.getInteger("cbr.parallelThreshold", 20_000);
 
     public FilmCbrApplication(Model model) {
-        _connector = new JenaOntologyConnector(model);
-        _caseBase = new LinealCaseBase();
+        encoder = new CaseEncoder();
+        _connector = new JenaOntologyConnector(model, encoder);
+        view = new CaseView(new CBRCase[0], encoder);
     }
 
     @Override
@@ -36,34 +81,68 @@ public class FilmCbrApplication implements StandardCBRApplication {
         simConfig.setDescriptionSimFunction(new Average());
 
         // 1. genre similarity - 28% weight
-        simConfig.addMapping(new Attribute("genres", CaseDescription.class), new SetSimilarity());
-        simConfig.setWeight(new Attribute("genres", CaseDescription.class), 0.28);
+        simConfig.addMapping(new Attribute("genreIds", CaseDescription.class), new EncodedSetSimilarity());
+        simConfig.setWeight(new Attribute("genreIds", CaseDescription.class), GENRE_WEIGHT);
 
         // 2. director similarity - 23% weight
-        simConfig.addMapping(new Attribute("director", CaseDescription.class), new Equal());
-        simConfig.setWeight(new Attribute("director", CaseDescription.class), 0.23);
+        simConfig.addMapping(new Attribute("directorId", CaseDescription.class), new Equal());
+        simConfig.setWeight(new Attribute("directorId", CaseDescription.class), DIRECTOR_WEIGHT);
 
         // 3. actor similarity - 19% weight
-        simConfig.addMapping(new Attribute("actors", CaseDescription.class), new SetSimilarity());
-        simConfig.setWeight(new Attribute("actors", CaseDescription.class), 0.19);
+        simConfig.addMapping(new Attribute("actorIds", CaseDescription.class), new EncodedSetSimilarity());
+        simConfig.setWeight(new Attribute("actorIds", CaseDescription.class), ACTOR_WEIGHT);
 
         // 4. IMDb rating similarity - 15% weight (interval 0-10)
-        simConfig.addMapping(new Attribute("imdbRating", CaseDescription.class), new Interval(10));
-        simConfig.setWeight(new Attribute("imdbRating", CaseDescription.class), 0.15);
+        simConfig.addMapping(new Attribute("imdbRating", CaseDescription.class), new Interval(IMDB_INTERVAL));
+        simConfig.setWeight(new Attribute("imdbRating", CaseDescription.class), IMDB_WEIGHT);
 
         // 5. year similarity - 10% weight (interval 100 years)
-        simConfig.addMapping(new Attribute("year", CaseDescription.class), new Interval(100));
-        simConfig.setWeight(new Attribute("year", CaseDescription.class), 0.10);
+        simConfig.addMapping(new Attribute("year", CaseDescription.class), new Interval(YEAR_INTERVAL));
+        simConfig.setWeight(new Attribute("year", CaseDescription.class), YEAR_WEIGHT);
 
         // 6. language similarity - 5% weight
-        simConfig.addMapping(new Attribute("languages", CaseDescription.class), new SetSimilarity());
-        simConfig.setWeight(new Attribute("languages", CaseDescription.class), 0.05);
+        simConfig.addMapping(new Attribute("languageIds", CaseDescription.class), new EncodedSetSimilarity());
+        simConfig.setWeight(new Attribute("languageIds", CaseDescription.class), LANGUAGE_WEIGHT);
     }
 
+    // the cases live in the view, which refreshFilms patches in place. a separate CBRCaseBase
+    // would go stale with the first refresh, so there is none to return
     @Override
     public CBRCaseBase preCycle() throws ExecutionException {
-        _caseBase.init(_connector);
-        return _caseBase;
+        reloadCases();
+        return null;
+    }
+
+    // reloads the whole case base from the model
+    public void reloadCases() {
+        long start = System.nanoTime();
+        CaseView loaded = new CaseView(_connector.retrieveAllCases().toArray(new CBRCase[0]), encoder);
+        lock.writeLock().lock();
+        try {
+            view = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        BUILD_LATENCY.record(System.nanoTime() - start);
+    }
+
+    // re-reads only the given films and patches their cases in place: a film keeps its positions,
+    // extra cases fill the slots other films freed or are appended, and the posting lists, title
+    // and film numbers and fingerprint change only for the cases that changed.
+    // a film that is gone from the model just loses its cases
+    public void refreshFilms(Set<String> filmIris) {
+        if (filmIris.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Collection<CBRCase> fresh = _connector.retrieveCases(filmIris);
+        lock.writeLock().lock();
+        try {
+            view.replaceFilms(filmIris, fresh);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        REFRESH_LATENCY.record(System.nanoTime() - start);
     }
 
     @Override
@@ -74,32 +153,339 @@ public class FilmCbrApplication implements StandardCBRApplication {
     public void postCycle() throws ExecutionException {
     }
 
+    public JenaOntologyConnector getConnector() {
+        return _connector;
+    }
+
+    public CaseEncoder getEncoder() {
+        return encoder;
+    }
+
+    public void setRetrievalMode(RetrievalMode retrievalMode) {
+        this.retrievalMode = retrievalMode;
+    }
+
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getCaseCount() {
+        lock.readLock().lock();
+        try {
+            return view.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getFingerprint() {
+        lock.readLock().lock();
+        try {
+            return view.fingerprint;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int findCasePosition(String filmTitle) {
+        lock.readLock().lock();
+        try {
+            return view.findCasePosition(filmTitle);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public Collection<RetrievalResult> findSimilarFilms(String filmTitle, int topN) throws ExecutionException {
-        CBRQuery query = null;
-
-        for (CBRCase cbrCase : _caseBase.getCases()) {
-            CaseDescription desc = (CaseDescription) cbrCase.getDescription();
-            if (desc.getTitle().equalsIgnoreCase(filmTitle)) {
-                query = new CBRQuery();
-                query.setDescription(desc);
-                break;
+        lock.readLock().lock();
+        try {
+            int position = view.findCasePosition(filmTitle);
+            if (position < 0) {
+                return null;
+            }
+            long start = System.nanoTime();
+            TopKCollector topK = findSimilarCases(view, position, topN);
+            long scored = System.nanoTime();
+            List<RetrievalResult> results = topK.toResults();
+            SIMILARITY_LATENCY.record(scored - start);
+            TOP_K_LATENCY.record(System.nanoTime() - scored);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // serves the answer from a precomputed table, null when the table can't answer it
+    public Collection<RetrievalResult> findSimilarFilms(String filmTitle, int topN, NeighborTable table) {
+        lock.readLock().lock();
+        try {
+            if (!table.covers(view.fingerprint, view.size, topN)) {
+                return null;
+            }
+            int position = view.findCasePosition(filmTitle);
+            if (position < 0) {
+                return null;
             }
+            long start = System.nanoTime();
+            List<RetrievalResult> results = table.lookup(position, topN, view.cases);
+            NEIGHBOR_LATENCY.record(System.nanoTime() - start);
+            return results;
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        if (query == null) {
-            return null;
+    // computes the top-k neighbors of every case in parallel and writes them to a binary table
+    public void writeNeighborTable(Path file, int k) throws IOException {
+        lock.readLock().lock();
+        try {
+            writeNeighborTable(view, file, k);
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        // retrieves similar cases using k-NN
-        Collection<RetrievalResult> eval = NNScoringMethod.evaluateSimilarity(
-                _caseBase.getCases(), query, simConfig);
+    private void writeNeighborTable(CaseView current, Path file, int k) throws IOException {
+        int[][] positions = new int[current.size][];
+        double[][] scores = new double[current.size][];
 
-        // removes the query film from results (similarity = 1.0)
-        eval.removeIf(result -> {
-            CaseDescription desc = (CaseDescription) result.get_case().getDescription();
-            return desc.getTitle().equalsIgnoreCase(filmTitle);
+        IntStream.range(0, current.size).parallel().forEach(i -> {
+            TopKCollector topK = findSimilarCases(current, i, k);
+            int[] p = new int[topK.size()];
+            double[] sc = new double[topK.size()];
+            int[] n = {0};
+            topK.forEachBestFirst((cbrCase, position, score) -> {
+                p[n[0]] = position;
+                sc[n[0]++] = score;
+            });
+            positions[i] = p;
+            scores[i] = sc;
         });
 
-        return SelectCases.selectTopKRR(eval, topN);
+        NeighborTable.write(file, current.fingerprint, k, positions, scores);
+    }
+
+    TopKCollector findSimilarCases(CaseView current, int queryPosition, int topN) {
+        CBRCase[] cases = current.cases;
+        int size = current.size;
+        IntPredicate skip = position -> current.sameFilm(position, queryPosition);
+        CBRCase queryCase = cases[queryPosition];
+        CBRQuery query = new CBRQuery();
+        query.setDescription(queryCase.getDescription());
+
+        // k-NN over all cases, keeping only the best topN and skipping every case of the query
+        // film (its other directors, years and ratings included) and every case with its title
+        TopKCollector topK;
+        if (retrievalMode == RetrievalMode.INDEXED) {
+            GlobalSimilarityFunction similarity = simConfig.getDescriptionSimFunction();
+            CaseComponent queryDesc = query.getDescription();
+            topK = current.index.search(cases, size, queryPosition, topN, skip,
+                    cbrCase -> similarity.compute(cbrCase.getDescription(), queryDesc, cbrCase, query, simConfig));
+        } else if (size < parallelThreshold) {
+            topK = new TopKCollector(topN);
+            scoreRange(cases, 0, size, skip, query, topK);
+        } else {
+            int leafSize = Math.max(1024, size / (ForkJoinPool.getCommonPoolParallelism() * 4));
+            topK = ForkJoinPool.commonPool().invoke(new ScoringTask(cases, 0, size, leafSize, skip, query, topN));
+        }
+
+        return topK;
+    }
+
+    private void scoreRange(CBRCase[] cases, int from, int to, IntPredicate skip, CBRQuery query, TopKCollector topK) {
+        GlobalSimilarityFunction similarity = simConfig.getDescriptionSimFunction();
+        CaseComponent queryDesc = query.getDescription();
+
+        for (int i = from; i < to; i++) {
+            CBRCase cbrCase = cases[i];
+            if (skip.test(i)) {
+                continue;
+            }
+            double score = similarity.compute(cbrCase.getDescription(), queryDesc, cbrCase, query, simConfig);
+            topK.offer(cbrCase, i, score);
+        }
+    }
+
+    // splits the case array until a partition is small enough, then merges the per-partition top-K.
+    // positions stay global, so the merge gives the same order as the sequential scan
+    private class ScoringTask extends RecursiveTask<TopKCollector> {
+        private static final long serialVersionUID = 1L;
+
+        private final CBRCase[] cases;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        private final IntPredicate skip;
+        private final CBRQuery query;
+        private final int topN;
+
+        ScoringTask(CBRCase[] cases, int from, int to, int leafSize, IntPredicate skip, CBRQuery query, int topN) {
+            this.cases = cases;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.skip = skip;
+            this.query = query;
+            this.topN = topN;
+        }
+
+        @Override
+        protected TopKCollector compute() {
+            if (to - from <= leafSize) {
+                TopKCollector topK = new TopKCollector(topN);
+                scoreRange(cases, from, to, skip, query, topK);
+                return topK;
+            }
+
+            int mid = (from + to) >>> 1;
+            ScoringTask left = new ScoringTask(cases, from, mid, leafSize, skip, query, topN);
+            ScoringTask right = new ScoringTask(cases, mid, to, leafSize, skip, query, topN);
+            left.fork();
+            TopKCollector merged = right.compute();
+            merged.offerAll(left.join());
+            return merged;
+        }
+    }
+
+    // cases plus what is derived from them. guarded by the application's lock: reloadCases replaces
+    // the whole view, refreshFilms patches it, so a retrieval never mixes the cases of one version
+    // with the posting lists of another
+    static final class CaseView {
+        CBRCase[] cases;
+        int size;
+        // film and title number per position: the cases of one film (by IRI, by normalized title
+        // for a case that has none) share a film number, cases with the same normalized title a
+        // title number
+        int[] films;
+        int[] titles;
+        final CaseIndex index;
+        long fingerprint;
+
+        private final Map<String, Integer> filmNumbers = new HashMap<>();
+        private final Map<String, Integer> titleNumbers = new HashMap<>();
+        // ascending positions per film and per title number
+        private final List<int[]> casesByFilm = new ArrayList<>();
+        private final List<int[]> casesByTitle = new ArrayList<>();
+
+        CaseView(CBRCase[] cases, CaseEncoder encoder) {
+            this.cases = cases;
+            this.size = cases.length;
+            this.films = new int[size];
+            this.titles = new int[size];
+            for (int position = 0; position < size; position++) {
+                number(position);
+            }
+            this.index = new CaseIndex(cases, size, encoder);
+            this.fingerprint = NeighborTable.fingerprint(cases, size);
+        }
+
+        // the first case with the title, like the old linear scan found it
+        int findCasePosition(String filmTitle) {
+            Integer title = titleNumbers.get(TitleIndex.normalize(filmTitle));
+            if (title == null || casesByTitle.get(title).length == 0) {
+                return -1;
+            }
+            return casesByTitle.get(title)[0];
+        }
+
+        // true for a case of the same film as the query case, or with the same title
+        boolean sameFilm(int position, int queryPosition) {
+            return films[position] == films[queryPosition] || titles[position] == titles[queryPosition];
+        }
+
+        // swaps the cases of the given films for the fresh ones. each film's fresh cases take its
+        // old positions in order; the rest fill the slots freed by other films, then go to the end.
+        // slots nobody took are filled from the end, so the cases stay dense
+        void replaceFilms(Set<String> filmIris, Collection<CBRCase> fresh) {
+            Map<String, List<CBRCase>> freshByFilm = new HashMap<>();
+            for (CBRCase cbrCase : fresh) {
+                freshByFilm.computeIfAbsent(((CaseDescription) cbrCase.getDescription()).getFilmIri(),
+                        iri -> new ArrayList<>()).add(cbrCase);
+            }
+
+            List<CBRCase> unplaced = new ArrayList<>();
+            List<Integer> freed = new ArrayList<>();
+            for (String filmIri : filmIris) {
+                Integer film = filmNumbers.get(filmIri);
+                int[] positions = film == null ? new int[0] : casesByFilm.get(film);
+                List<CBRCase> replacements = freshByFilm.getOrDefault(filmIri, List.of());
+                for (int i = 0; i < positions.length; i++) {
+                    clear(positions[i]);
+                    if (i < replacements.size()) {
+                        set(positions[i], replacements.get(i));
+                    } else {
+                        freed.add(positions[i]);
+                    }
+                }
+                for (int i = positions.length; i < replacements.size(); i++) {
+                    unplaced.add(replacements.get(i));
+                }
+            }
+
+            freed.sort(null);
+            int filled = 0;
+            for (CBRCase cbrCase : unplaced) {
+                if (filled < freed.size()) {
+                    set(freed.get(filled++), cbrCase);
+                } else {
+                    append(cbrCase);
+                }
+            }
+            // highest first, so the last case is never itself a free slot
+            for (int i = freed.size() - 1; i >= filled; i--) {
+                int slot = freed.get(i);
+                int last = size - 1;
+                if (slot != last) {
+                    CBRCase moved = cases[last];
+                    clear(last);
+                    set(slot, moved);
+                }
+                size--;
+            }
+        }
+
+        private void append(CBRCase cbrCase) {
+            if (size == cases.length) {
+                int capacity = Math.max(16, size + (size >> 1));
+                cases = Arrays.copyOf(cases, capacity);
+                films = Arrays.copyOf(films, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+            }
+            set(size++, cbrCase);
+        }
+
+        private void set(int position, CBRCase cbrCase) {
+            cases[position] = cbrCase;
+            number(position);
+            index.add(position, (CaseDescription) cbrCase.getDescription());
+            fingerprint += NeighborTable.caseHash(position, cbrCase);
+        }
+
+        private void clear(int position) {
+            CBRCase cbrCase = cases[position];
+            casesByFilm.set(films[position], CaseIndex.remove(casesByFilm.get(films[position]), position));
+            casesByTitle.set(titles[position], CaseIndex.remove(casesByTitle.get(titles[position]), position));
+            index.remove(position, (CaseDescription) cbrCase.getDescription());
+            fingerprint -= NeighborTable.caseHash(position, cbrCase);
+            cases[position] = null;
+        }
+
+        private void number(int position) {
+            CaseDescription desc = (CaseDescription) cases[position].getDescription();
+            String title = TitleIndex.normalize(desc.getTitle());
+            films[position] = number(filmNumbers, casesByFilm, desc.getFilmIri() != null ? desc.getFilmIri() : "title:" + title, position);
+            titles[position] = number(titleNumbers, casesByTitle, title, position);
+        }
+
+        private static int number(Map<String, Integer> numbers, List<int[]> positions, String key, int position) {
+            Integer number = numbers.get(key);
+            if (number == null) {
+                number = positions.size();
+                numbers.put(key, number);
+                positions.add(new int[0]);
+            }
+            positions.set(number, CaseIndex.insert(positions.get(number), position));
+            return number;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,103 +1,381 @@
 package cbr;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
+import ontology.FilmGraph;
+import ontology.QueryRegistry;
+import ontology.TitleIndex;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
 import ucm.gaia.jcolibri.cbrcore.CBRCase;
 import ucm.gaia.jcolibri.cbrcore.CaseBaseFilter;
 import ucm.gaia.jcolibri.cbrcore.Connector;
 import ucm.gaia.jcolibri.exception.InitializingException;
 
+// cases are read by walking the graph film by film (the default), or with -Dcbr.caseLoader=sparql
+// by the CASE_BASE query. both loaders sort what they read by CASE_ORDER, so they give the same
+// cases in the same order and a neighbor table written under one still fits the other
 public class JenaOntologyConnector implements Connector {
 
+    public static final String CASE_LOADER = System.getProperty("cbr.caseLoader", "graph").toLowerCase(Locale.ROOT);
+
+    private static final String NS = TitleIndex.NS;
+
+    private static final Node FILM = NodeFactory.createURI(NS + "Film");
+    private static final Node TITLE = NodeFactory.createURI(NS + "title");
+    private static final Node RELEASE_YEAR = NodeFactory.createURI(NS + "releaseYear");
+    private static final Node IMDB_RATING = NodeFactory.createURI(NS + "imdbRating");
+    private static final Node DIRECTED_BY = NodeFactory.createURI(NS + "directedBy");
+    private static final Node HAS_GENRE = NodeFactory.createURI(NS + "hasGenre");
+    private static final Node HAS_ACTOR = NodeFactory.createURI(NS + "hasActor");
+    private static final Node SPOKEN_IN_LANGUAGE = NodeFactory.createURI(NS + "spokenInLanguage");
+    private static final Node PERSON_NAME = NodeFactory.createURI(NS + "personName");
+    private static final Node GENRE_NAME = NodeFactory.createURI(NS + "genreName");
+    private static final Node LANGUAGE_NAME = NodeFactory.createURI(NS + "languageName");
+
+    // film IRI (blank-node films first), then every attribute a case is grouped by or carries.
+    // neither graph.find nor GROUP BY promise an order, this is what makes loads repeatable
+    private static final Comparator<CBRCase> CASE_ORDER = Comparator
+            .comparing((CBRCase c) -> desc(c).getFilmIri(), Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(c -> desc(c).getTitle())
+            .thenComparing(c -> desc(c).isYearDefaulted())
+            .thenComparing(c -> desc(c).getYear())
+            .thenComparing(c -> desc(c).isImdbRatingDefaulted())
+            .thenComparing(c -> desc(c).getImdbRating())
+            .thenComparing(c -> desc(c).getDirector())
+            .thenComparing(c -> desc(c).getGenres())
+            .thenComparing(c -> desc(c).getActors())
+            .thenComparing(c -> desc(c).getLanguages());
+
     private Model model;
+    private CaseEncoder encoder;
 
-    public JenaOntologyConnector(Model model) {
+    public JenaOntologyConnector(Model model, CaseEncoder encoder) {
         this.model = model;
+        this.encoder = encoder;
     }
 
     @Override
     public Collection<CBRCase> retrieveAllCases() {
         LinkedList<CBRCase> cases = new LinkedList<>();
 
-        String sparql =
-                "PREFIX : <http://example.org/films#> " +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                        "SELECT ?title ?year ?imdb ?director " +
-                        "       (GROUP_CONCAT(DISTINCT ?genreName; separator=\",\") AS ?genres) " +
-                        "       (GROUP_CONCAT(DISTINCT ?actorName; separator=\",\") AS ?actors) " +
-                        "       (GROUP_CONCAT(DISTINCT ?langName; separator=\",\") AS ?languages) " +
-                        "WHERE { " +
-                        "  ?film rdf:type :Film ; " +
-                        "        :title ?title . " +
-                        "  OPTIONAL { ?film :releaseYear ?year } " +
-                        "  OPTIONAL { ?film :imdbRating ?imdb } " +
-                        "  OPTIONAL { ?film :directedBy ?dir . ?dir :personName ?director } " +
-                        "  OPTIONAL { ?film :hasGenre ?g . ?g :genreName ?genreName } " +
-                        "  OPTIONAL { ?film :hasActor ?a . ?a :personName ?actorName } " +
-                        "  OPTIONAL { ?film :spokenInLanguage ?l . ?l :languageName ?langName } " +
-                        "} " +
-                        "GROUP BY ?film ?title ?year ?imdb ?director";
-
-        try (QueryExecution qexec = QueryExecution.create()
-                .query(QueryFactory.create(sparql))
-                .model(model)
-                .build()) {
-
-            ResultSet rs = qexec.execSelect();
-
-            while (rs.hasNext()) {
-                QuerySolution sol = rs.next();
-
-                CBRCase cbrCase = new CBRCase();
-                CaseDescription desc = new CaseDescription();
-
-                String title = sol.getLiteral("title").getString();
-                desc.setId(title);
-                desc.setTitle(title);
-
-                if (sol.contains("year")) {
-                    String yearStr = sol.getLiteral("year").getString();
-                    desc.setYear(Integer.parseInt(yearStr.substring(0, 4)));
-                } else {
-                    desc.setYear(2000);
+        if (!CASE_LOADER.equals("sparql")) {
+            FilmGraph.read(model, () -> {
+                Graph graph = model.getGraph();
+                ExtendedIterator<Triple> films = graph.find(Node.ANY, RDF.type.asNode(), FILM);
+                try {
+                    while (films.hasNext()) {
+                        addCases(graph, films.next().getSubject(), cases);
+                    }
+                } finally {
+                    films.close();
                 }
-
-                desc.setImdbRating(sol.contains("imdb") ? sol.getLiteral("imdb").getDouble() : 0.0);
-                desc.setDirector(sol.contains("director") ? sol.getLiteral("director").getString() : "");
-                desc.setGenres(sol.contains("genres") ? sol.getLiteral("genres").getString() : "");
-                if (sol.contains("actors")) {
-                    String actorsStr = sol.getLiteral("actors").getString();
-                    desc.setActors(actorsStr);
-                    //System.out.println("DEBUG Connector - Film: " + title + " | Actors: [" + actorsStr + "]");  // ← DODAJ OVO
-                } else {
-                    desc.setActors("");
-                    //System.out.println("DEBUG Connector - Film: " + title + " | Actors: EMPTY");  // ← DODAJ OVO
+                return null;
+            });
+        } else {
+            QueryRegistry.getInstance().select(QueryRegistry.CASE_BASE, model, rs -> {
+                while (rs.hasNext()) {
+                    cases.add(toCase(rs.next()));
                 }
-                desc.setLanguages(sol.contains("languages") ? sol.getLiteral("languages").getString() : "");
+                return null;
+            });
+        }
+
+        cases.sort(CASE_ORDER);
+        return cases;
+    }
+
+    // the cases of the given films only, all on one snapshot. a film that is gone or no longer a
+    // titled :Film simply has no cases
+    public Collection<CBRCase> retrieveCases(Collection<String> filmIris) {
+        LinkedList<CBRCase> cases = new LinkedList<>();
 
-                cbrCase.setDescription(desc);
-                cases.add(cbrCase);
+        FilmGraph.read(model, () -> {
+            Graph graph = model.getGraph();
+            for (String filmIri : filmIris) {
+                if (!CASE_LOADER.equals("sparql")) {
+                    Node film = NodeFactory.createURI(filmIri);
+                    if (graph.contains(film, RDF.type.asNode(), FILM)) {
+                        addCases(graph, film, cases);
+                    }
+                    continue;
+                }
+                QuerySolutionMap bindings = new QuerySolutionMap();
+                bindings.add("film", model.createResource(filmIri));
+                QueryRegistry.getInstance().select(QueryRegistry.CASE_BASE, model, bindings, rs -> {
+                    while (rs.hasNext()) {
+                        cases.add(toCase(rs.next()));
+                    }
+                    return null;
+                });
             }
-        }
+            return null;
+        });
 
+        cases.sort(CASE_ORDER);
         return cases;
     }
 
+    // the filter only carries a case limit, 0 meaning no limit
     @Override
-    public Collection<CBRCase> retrieveSomeCases(CaseBaseFilter filter) { return null; }
+    public Collection<CBRCase> retrieveSomeCases(CaseBaseFilter filter) {
+        Collection<CBRCase> cases = retrieveAllCases();
+        int max = filter == null ? 0 : filter.getMaxCases();
+        if (max <= 0 || cases.size() <= max) {
+            return cases;
+        }
+        return new LinkedList<>(new ArrayList<>(cases).subList(0, max));
+    }
 
+    // writes the cases back as film triples, replacing whatever the films had for the case
+    // attributes. cases of one film (one per director) are merged, directors, genres, actors and
+    // languages are matched to existing resources by name and created when there is none.
+    // the whole batch is one write, readers never see a film half rewritten
     @Override
-    public void storeCases(Collection<CBRCase> cases) {}
+    public void storeCases(Collection<CBRCase> cases) {
+        FilmGraph.write(model, () -> writeCases(cases));
+    }
+
+    private void writeCases(Collection<CBRCase> cases) {
+        Property title = model.createProperty(NS, "title");
+        Property releaseYear = model.createProperty(NS, "releaseYear");
+        Property imdbRating = model.createProperty(NS, "imdbRating");
+        Property directedBy = model.createProperty(NS, "directedBy");
+        Property hasGenre = model.createProperty(NS, "hasGenre");
+        Property hasActor = model.createProperty(NS, "hasActor");
+        Property spokenInLanguage = model.createProperty(NS, "spokenInLanguage");
+        Property personName = model.createProperty(NS, "personName");
+        Property genreName = model.createProperty(NS, "genreName");
+        Property languageName = model.createProperty(NS, "languageName");
+
+        for (List<CaseDescription> descs : byFilm(cases).values()) {
+            CaseDescription first = descs.get(0);
+            Resource film = model.createResource(filmIri(first));
+
+            for (Property p : List.of(title, releaseYear, imdbRating, directedBy, hasGenre, hasActor, spokenInLanguage)) {
+                film.removeAll(p);
+            }
+
+            film.addProperty(RDF.type, model.createResource(NS + "Film"));
+            film.addProperty(title, first.getTitle());
+            // defaulted values were never in the model and are not written back
+            if (first.getYear() != null && !first.isYearDefaulted()) {
+                film.addProperty(releaseYear, model.createTypedLiteral(String.valueOf(first.getYear()), XSDDatatype.XSDgYear));
+            }
+            if (first.getImdbRating() != null && !first.isImdbRatingDefaulted()) {
+                film.addProperty(imdbRating, model.createTypedLiteral(String.valueOf(first.getImdbRating()), XSDDatatype.XSDdecimal));
+            }
+
+            for (CaseDescription desc : descs) {
+                if (desc.getDirector() != null && !desc.getDirector().isEmpty()) {
+                    film.addProperty(directedBy, named(desc.getDirector(), personName, "Director"));
+                }
+                for (String genre : split(desc.getGenres())) {
+                    film.addProperty(hasGenre, named(genre, genreName, "Genre"));
+                }
+                for (String actor : split(desc.getActors())) {
+                    film.addProperty(hasActor, named(actor, personName, "Actor"));
+                }
+                for (String language : split(desc.getLanguages())) {
+                    film.addProperty(spokenInLanguage, named(language, languageName, "Language"));
+                }
+            }
+        }
+    }
 
     @Override
     public void close() {}
 
+    // removes the films with every triple about them or pointing at them, in one write. shared
+    // resources such as directors and genres stay
     @Override
-    public void deleteCases(Collection<CBRCase> cases) {}
+    public void deleteCases(Collection<CBRCase> cases) {
+        FilmGraph.write(model, () -> {
+            for (String filmIri : byFilm(cases).keySet()) {
+                Resource film = model.createResource(filmIri);
+                model.removeAll(film, null, null);
+                model.removeAll(null, null, film);
+            }
+        });
+    }
 
     @Override
     public void initFromXMLfile(java.net.URL url) throws InitializingException {}
-}
\ No newline at end of file
+
+    // what CASE_BASE gives for one film, read off its own triples: a case per title, year, rating
+    // and director name (its GROUP BY keys, a missing one counting once as unbound), each with the
+    // film's distinct genre, actor and language names in graph order. no row is ever multiplied by
+    // another, so the work is linear in the film's triples
+    private void addCases(Graph graph, Node film, Collection<CBRCase> cases) {
+        List<Node> titles = objects(graph, film, TITLE);
+        if (titles.isEmpty()) {
+            return;
+        }
+        List<Node> years = orUnbound(objects(graph, film, RELEASE_YEAR));
+        List<Node> ratings = orUnbound(objects(graph, film, IMDB_RATING));
+        List<Node> directors = orUnbound(names(graph, film, DIRECTED_BY, PERSON_NAME));
+        String genres = join(names(graph, film, HAS_GENRE, GENRE_NAME));
+        String actors = join(names(graph, film, HAS_ACTOR, PERSON_NAME));
+        String languages = join(names(graph, film, SPOKEN_IN_LANGUAGE, LANGUAGE_NAME));
+
+        for (Node title : titles) {
+            for (Node year : years) {
+                for (Node rating : ratings) {
+                    for (Node director : directors) {
+                        cases.add(toCase(film.isURI() ? film.getURI() : null, literal(title).getString(),
+                                year == null ? null : literal(year).getString(),
+                                rating == null ? null : literal(rating),
+                                director == null ? "" : literal(director).getString(),
+                                genres, actors, languages));
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<Node> objects(Graph graph, Node subject, Node property) {
+        List<Node> objects = new ArrayList<>(1);
+        ExtendedIterator<Triple> it = graph.find(subject, property, Node.ANY);
+        try {
+            while (it.hasNext()) {
+                objects.add(it.next().getObject());
+            }
+        } finally {
+            it.close();
+        }
+        return objects;
+    }
+
+    // distinct names of the linked resources, in the order the links and then the names are found
+    private static List<Node> names(Graph graph, Node subject, Node link, Node nameProperty) {
+        Set<Node> names = new LinkedHashSet<>();
+        for (Node linked : objects(graph, subject, link)) {
+            names.addAll(objects(graph, linked, nameProperty));
+        }
+        return new ArrayList<>(names);
+    }
+
+    private static List<Node> orUnbound(List<Node> values) {
+        return values.isEmpty() ? Collections.singletonList(null) : values;
+    }
+
+    // GROUP_CONCAT's rendering: lexical forms, comma separated
+    private static String join(List<Node> names) {
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<Node> it = names.iterator(); it.hasNext(); ) {
+            Node name = it.next();
+            sb.append(name.isLiteral() ? name.getLiteralLexicalForm() : name.toString());
+            if (it.hasNext()) {
+                sb.append(',');
+            }
+        }
+        return sb.toString();
+    }
+
+    private Literal literal(Node node) {
+        return model.asRDFNode(node).asLiteral();
+    }
+
+    private CBRCase toCase(QuerySolution sol) {
+        return toCase(sol.getResource("film").getURI(), sol.getLiteral("title").getString(),
+                sol.contains("year") ? sol.getLiteral("year").getString() : null,
+                sol.contains("imdb") ? sol.getLiteral("imdb") : null,
+                sol.contains("director") ? sol.getLiteral("director").getString() : "",
+                sol.contains("genres") ? sol.getLiteral("genres").getString() : "",
+                sol.contains("actors") ? sol.getLiteral("actors").getString() : "",
+                sol.contains("languages") ? sol.getLiteral("languages").getString() : "");
+    }
+
+    private CBRCase toCase(String filmIri, String title, String year, Literal imdb, String director,
+                           String genres, String actors, String languages) {
+        CBRCase cbrCase = new CBRCase();
+        CaseDescription desc = new CaseDescription();
+
+        desc.setId(title);
+        desc.setFilmIri(filmIri);
+        desc.setTitle(title);
+        desc.setYear(year != null ? Integer.parseInt(year.substring(0, 4)) : 2000);
+        desc.setYearDefaulted(year == null);
+        desc.setImdbRating(imdb != null ? imdb.getDouble() : 0.0);
+        desc.setImdbRatingDefaulted(imdb == null);
+        desc.setDirector(director);
+        desc.setGenres(genres);
+        desc.setActors(actors);
+        desc.setLanguages(languages);
+        encoder.encode(desc);
+
+        cbrCase.setDescription(desc);
+        return cbrCase;
+    }
+
+    private static CaseDescription desc(CBRCase cbrCase) {
+        return (CaseDescription) cbrCase.getDescription();
+    }
+
+    // film IRI -> its cases, in the order given
+    private static Map<String, List<CaseDescription>> byFilm(Collection<CBRCase> cases) {
+        Map<String, List<CaseDescription>> byFilm = new LinkedHashMap<>();
+        for (CBRCase cbrCase : cases) {
+            CaseDescription desc = (CaseDescription) cbrCase.getDescription();
+            byFilm.computeIfAbsent(filmIri(desc), iri -> new ArrayList<>()).add(desc);
+        }
+        return byFilm;
+    }
+
+    // new films get an IRI from their title, the way the instance file names them
+    private static String filmIri(CaseDescription desc) {
+        return desc.getFilmIri() != null ? desc.getFilmIri() : NS + localName(desc.getTitle());
+    }
+
+    private Resource named(String name, Property nameProperty, String type) {
+        ResIterator it = model.listSubjectsWithProperty(nameProperty, name);
+        try {
+            if (it.hasNext()) {
+                return it.next();
+            }
+        } finally {
+            it.close();
+        }
+        return model.createResource(NS + localName(name))
+                .addProperty(RDF.type, model.createResource(NS + type))
+                .addProperty(nameProperty, name);
+    }
+
+    private static String localName(String name) {
+        return name.replaceAll("[^\\p{L}\\p{N}_]", "");
+    }
+
+    private static Set<String> split(String joined) {
+        Set<String> values = new LinkedHashSet<>();
+        if (joined != null) {
+            for (String value : joined.split(",")) {
+                if (!value.trim().isEmpty()) {
+                    values.add(value.trim());
+                }
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,151 @@
+package cbr;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import ucm.gaia.jcolibri.cbrcore.CBRCase;
+import ucm.gaia.jcolibri.method.retrieve.RetrievalResult;
+
+// precomputed top-k neighbors of every case, stored as
+//   header: magic, version, case base fingerprint, case count, k
+//   rows:   k x (case position, score) per case, position -1 when a row has fewer than k neighbors
+public class NeighborTable {
+
+    private static final int MAGIC = 0x464E4252;   // "FNBR"
+    // 2: additive fingerprint
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    private static final int ENTRY_SIZE = 4 + 8;
+    // one mapped buffer, indexed by int
+    private static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private final MappedByteBuffer buffer;
+    private final long fingerprint;
+    private final int caseCount;
+    private final int k;
+
+    private NeighborTable(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a neighbor table");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Neighbor table version " + buffer.getInt(4) + ", expected " + VERSION + "; rebuild it");
+        }
+        this.fingerprint = buffer.getLong(8);
+        this.caseCount = buffer.getInt(16);
+        this.k = buffer.getInt(20);
+        if (buffer.capacity() != HEADER_SIZE + (long) caseCount * k * ENTRY_SIZE) {
+            throw new IOException("Truncated neighbor table");
+        }
+    }
+
+    public static NeighborTable open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > MAX_SIZE) {
+                throw new IOException("Neighbor table is " + channel.size() + " bytes, more than " + MAX_SIZE + " can be mapped");
+            }
+            return new NeighborTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getK() { return k; }
+    public long getFingerprint() { return fingerprint; }
+
+    // true if the table was built from this case base and stores enough neighbors
+    public boolean covers(long caseBaseFingerprint, int caseBaseSize, int topN) {
+        return fingerprint == caseBaseFingerprint && caseCount == caseBaseSize && topN <= k;
+    }
+
+    public List<RetrievalResult> lookup(int position, int topN, CBRCase[] cases) {
+        List<RetrievalResult> results = new ArrayList<>(topN);
+        long row = HEADER_SIZE + (long) position * k * ENTRY_SIZE;
+        for (int i = 0; i < topN; i++) {
+            int offset = (int) (row + (long) i * ENTRY_SIZE);
+            int neighbor = buffer.getInt(offset);
+            if (neighbor < 0) {
+                break;
+            }
+            results.add(new RetrievalResult(cases[neighbor], buffer.getDouble(offset + 4)));
+        }
+        return results;
+    }
+
+    public static void write(Path file, long fingerprint, int k, int[][] positions, double[][] scores) throws IOException {
+        long size = HEADER_SIZE + (long) positions.length * k * ENTRY_SIZE;
+        if (size > MAX_SIZE) {
+            throw new IOException("Neighbor table would be " + size + " bytes, more than " + MAX_SIZE + " can be mapped; use a smaller k");
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        // written next to the target and moved into place, so readers never see a half-written table
+        Path tmp = Files.createTempFile(parent, "neighbors", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(positions.length);
+            out.writeInt(k);
+
+            for (int i = 0; i < positions.length; i++) {
+                for (int j = 0; j < k; j++) {
+                    boolean present = j < positions[i].length;
+                    out.writeInt(present ? positions[i][j] : -1);
+                    out.writeDouble(present ? scores[i][j] : 0.0);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // the similarity weights plus one term per case: a 64-bit FNV-1a of every attribute the
+    // weights look at, mixed with the case's position. the terms are summed, so replacing or
+    // moving a case only swaps its own terms and the case base never has to be hashed again
+    public static long fingerprint(CBRCase[] cases, int size) {
+        long fingerprint = weightsHash();
+        for (int position = 0; position < size; position++) {
+            fingerprint += caseHash(position, cases[position]);
+        }
+        return fingerprint;
+    }
+
+    static long weightsHash() {
+        return hash(0xcbf29ce484222325L, FilmCbrApplication.GENRE_WEIGHT + "," + FilmCbrApplication.DIRECTOR_WEIGHT
+                + "," + FilmCbrApplication.ACTOR_WEIGHT + "," + FilmCbrApplication.IMDB_WEIGHT
+                + "," + FilmCbrApplication.YEAR_WEIGHT + "," + FilmCbrApplication.LANGUAGE_WEIGHT
+                + "," + FilmCbrApplication.IMDB_INTERVAL + "," + FilmCbrApplication.YEAR_INTERVAL);
+    }
+
+    static long caseHash(int position, CBRCase cbrCase) {
+        CaseDescription desc = (CaseDescription) cbrCase.getDescription();
+        String row = desc.getTitle() + '\u0001' + desc.getYear() + '\u0001' + desc.getImdbRating()
+                + '\u0001' + desc.getDirector() + '\u0001' + desc.getGenres()
+                + '\u0001' + desc.getActors() + '\u0001' + desc.getLanguages() + '\u0002';
+        // murmur3 finalizer, so neighboring positions give unrelated terms
+        long h = hash(0xcbf29ce484222325L, row) + position * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static long hash(long hash, String value) {
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,125 @@
+package cbr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ucm.gaia.jcolibri.cbrcore.CBRCase;
+import ucm.gaia.jcolibri.method.retrieve.RetrievalResult;
+
+// keeps the best k cases in a fixed-size min-heap. ties are broken by case position,
+// lower position first, which is the order a stable sort of the whole case base gives
+public class TopKCollector {
+
+    public interface Visitor {
+        void visit(CBRCase cbrCase, int position, double score);
+    }
+
+    private final int k;
+    private final CBRCase[] cases;
+    private final int[] positions;
+    private final double[] scores;
+    private int size;
+
+    public TopKCollector(int k) {
+        this.k = Math.max(k, 0);
+        this.cases = new CBRCase[this.k];
+        this.positions = new int[this.k];
+        this.scores = new double[this.k];
+    }
+
+    public void offer(CBRCase cbrCase, int position, double score) {
+        if (size < k) {
+            cases[size] = cbrCase;
+            positions[size] = position;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (k > 0 && better(score, position, scores[0], positions[0])) {
+            cases[0] = cbrCase;
+            positions[0] = position;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    public void offerAll(TopKCollector other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.cases[i], other.positions[i], other.scores[i]);
+        }
+    }
+
+    public boolean isFull() {
+        return size == k;
+    }
+
+    // score of the current k-th best case, only meaningful once the heap is full
+    public double threshold() {
+        return size == 0 ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEachBestFirst(Visitor visitor) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> better(scores[a], positions[a], scores[b], positions[b]) ? -1 : 1);
+
+        for (int i : order) {
+            visitor.visit(cases[i], positions[i], scores[i]);
+        }
+    }
+
+    // best first
+    public List<RetrievalResult> toResults() {
+        List<RetrievalResult> results = new ArrayList<>(size);
+        forEachBestFirst((cbrCase, position, score) -> results.add(new RetrievalResult(cbrCase, score)));
+        return results;
+    }
+
+    private static boolean better(double score1, int position1, double score2, int position2) {
+        if (score1 != score2) {
+            return score1 > score2;
+        }
+        return position1 < position2;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!better(scores[parent], positions[parent], scores[i], positions[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            int right = left + 1;
+            int worst = i;
+            if (left < size && better(scores[worst], positions[worst], scores[left], positions[left])) {
+                worst = left;
+            }
+            if (right < size && better(scores[worst], positions[worst], scores[right], positions[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        CBRCase c = cases[a]; cases[a] = cases[b]; cases[b] = c;
+        int p = positions[a]; positions[a] = positions[b]; positions[b] = p;
+        double s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+    }
+}
@@ -0,0 +1,170 @@
+package fuzzy;
+
+// straight-line evaluator for one FCL function block, built by FclCompiler.
+// memberships are flat breakpoint arrays, rules are postfix programs over input term slots and
+// the COG of the output is summed over the same 1000-point grid jFuzzyLogic's continuous
+// defuzzifier uses, with every output term tabulated on that grid up front.
+// results stay within TOLERANCE quality points of FunctionBlock.evaluate()
+public class CompiledFuzzyEvaluator {
+
+    public static final double TOLERANCE = 0.5;
+
+    static final int OP_AND = -1;
+    static final int OP_OR = -2;
+    static final int OP_NOT = -3;
+
+    private final String[] inputNames;
+    private final int[] inputOfSlot;        // input term slot -> input variable
+    private final double[][] slotX;         // input term slot -> breakpoints
+    private final double[][] slotY;
+    private final int[][] rules;            // postfix: >= 0 pushes a slot degree, < 0 is an operator
+    private final double[] ruleWeights;
+    private final int[] ruleOutputTerm;
+    private final int outputTermCount;
+    private final double[] gridX;
+    private final double[][] outputTable;   // output term -> membership at each grid point
+    private final double defaultValue;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    CompiledFuzzyEvaluator(String[] inputNames, int[] inputOfSlot, double[][] slotX, double[][] slotY,
+                           int[][] rules, double[] ruleWeights, int[] ruleOutputTerm,
+                           double[] gridX, double[][] outputTable, double defaultValue) {
+        this.inputNames = inputNames;
+        this.inputOfSlot = inputOfSlot;
+        this.slotX = slotX;
+        this.slotY = slotY;
+        this.rules = rules;
+        this.ruleWeights = ruleWeights;
+        this.ruleOutputTerm = ruleOutputTerm;
+        this.outputTermCount = outputTable.length;
+        this.gridX = gridX;
+        this.outputTable = outputTable;
+        this.defaultValue = defaultValue;
+
+        int maxProgram = 1;
+        for (int[] rule : rules) {
+            maxProgram = Math.max(maxProgram, rule.length);
+        }
+        int stackSize = maxProgram;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(inputNames.length, slotX.length, outputTermCount, stackSize));
+    }
+
+    // position of an input variable in the array passed to evaluate
+    public int inputIndex(String name) {
+        for (int i = 0; i < inputNames.length; i++) {
+            if (inputNames[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown input variable: " + name);
+    }
+
+    public int inputCount() {
+        return inputNames.length;
+    }
+
+    // per-thread input array, so callers can evaluate without allocating
+    public double[] inputBuffer() {
+        return scratch.get().inputs;
+    }
+
+    public double evaluate(double[] inputs) {
+        Scratch s = scratch.get();
+
+        // fuzzify
+        double[] degrees = s.slotDegrees;
+        for (int slot = 0; slot < degrees.length; slot++) {
+            degrees[slot] = membership(slotX[slot], slotY[slot], inputs[inputOfSlot[slot]]);
+        }
+
+        // rules: AND = MIN, OR = MAX, accumulated per output term with MAX
+        double[] termDegrees = s.termDegrees;
+        for (int t = 0; t < outputTermCount; t++) {
+            termDegrees[t] = 0;
+        }
+        double[] stack = s.stack;
+        for (int r = 0; r < rules.length; r++) {
+            int[] program = rules[r];
+            int top = 0;
+            for (int op : program) {
+                if (op >= 0) {
+                    stack[top++] = degrees[op];
+                } else if (op == OP_NOT) {
+                    stack[top - 1] = 1 - stack[top - 1];
+                } else {
+                    double b = stack[--top];
+                    double a = stack[top - 1];
+                    stack[top - 1] = op == OP_AND ? Math.min(a, b) : Math.max(a, b);
+                }
+            }
+            double degree = stack[0] * ruleWeights[r];
+            int term = ruleOutputTerm[r];
+            if (degree > termDegrees[term]) {
+                termDegrees[term] = degree;
+            }
+        }
+
+        // ACT = MIN, ACCU = MAX, center of gravity over the grid, skipping terms no rule fired
+        int[] active = s.activeTerms;
+        int activeCount = 0;
+        for (int t = 0; t < outputTermCount; t++) {
+            if (termDegrees[t] > 0) {
+                active[activeCount++] = t;
+            }
+        }
+
+        double sum = 0;
+        double weightedSum = 0;
+        for (int i = 0; i < gridX.length; i++) {
+            double mu = 0;
+            for (int a = 0; a < activeCount; a++) {
+                int t = active[a];
+                double clipped = Math.min(termDegrees[t], outputTable[t][i]);
+                if (clipped > mu) {
+                    mu = clipped;
+                }
+            }
+            sum += mu;
+            weightedSum += gridX[i] * mu;
+        }
+
+        return sum > 0 ? weightedSum / sum : defaultValue;
+    }
+
+    // piece-wise linear membership, flat outside the first and last breakpoint
+    static double membership(double[] x, double[] y, double in) {
+        int last = x.length - 1;
+        if (in <= x[0]) {
+            return y[0];
+        }
+        if (in >= x[last]) {
+            return y[last];
+        }
+        int i = 1;
+        while (in > x[i]) {
+            i++;
+        }
+        double dx = x[i] - x[i - 1];
+        if (dx == 0) {
+            return y[i];
+        }
+        return y[i - 1] + (y[i] - y[i - 1]) * (in - x[i - 1]) / dx;
+    }
+
+    private static class Scratch {
+        final double[] inputs;
+        final double[] slotDegrees;
+        final double[] termDegrees;
+        final int[] activeTerms;
+        final double[] stack;
+
+        Scratch(int inputCount, int slotCount, int termCount, int stackSize) {
+            inputs = new double[inputCount];
+            slotDegrees = new double[slotCount];
+            termDegrees = new double[termCount];
+            activeTerms = new int[termCount];
+            stack = new double[stackSize];
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package fuzzy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// compiles the subset of FCL used by film_quality.fcl (piece-wise linear terms, one output,
+// AND MIN / OR MAX / ACT MIN / ACCU MAX, COG) into a CompiledFuzzyEvaluator.
+// anything outside that subset is rejected so callers can stay on jFuzzyLogic
+public class FclCompiler {
+
+    // jFuzzyLogic's continuous defuzzifiers sample the output universe at 1000 points
+    static final int COG_POINTS = 1000;
+
+    private final List<String> tokens;
+    private int pos;
+
+    private final List<String> inputs = new ArrayList<>();
+    private String output;
+    private final Map<String, Map<String, double[][]>> terms = new LinkedHashMap<>();
+    private final List<Object[]> rules = new ArrayList<>();   // {condition tokens, output term, weight}
+    private double defaultValue = Double.NaN;
+
+    private FclCompiler(String fcl) {
+        this.tokens = tokenize(fcl);
+    }
+
+    public static CompiledFuzzyEvaluator compile(String fcl, String functionBlock) {
+        FclCompiler compiler = new FclCompiler(fcl);
+        compiler.parse(functionBlock);
+        return compiler.build();
+    }
+
+    // ---- parsing ----
+
+    private void parse(String functionBlock) {
+        expect("FUNCTION_BLOCK");
+        String name = next();
+        if (!name.equals(functionBlock)) {
+            throw new IllegalArgumentException("Expected function block " + functionBlock + " but found " + name);
+        }
+
+        while (!peek().equals("END_FUNCTION_BLOCK")) {
+            String section = next();
+            switch (section) {
+                case "VAR_INPUT" -> parseVars(inputs);
+                case "VAR_OUTPUT" -> {
+                    List<String> outputs = new ArrayList<>();
+                    parseVars(outputs);
+                    if (outputs.size() != 1) throw unsupported("exactly one output variable");
+                    output = outputs.get(0);
+                }
+                case "FUZZIFY" -> parseTerms(next(), "END_FUZZIFY");
+                case "DEFUZZIFY" -> parseTerms(next(), "END_DEFUZZIFY");
+                case "RULEBLOCK" -> parseRuleBlock();
+                default -> throw unsupported("section " + section);
+            }
+        }
+    }
+
+    private void parseVars(List<String> names) {
+        while (!peek().equals("END_VAR")) {
+            names.add(next());
+            expect(":");
+            String type = next();
+            if (!type.equals("REAL")) throw unsupported("variable type " + type);
+            expect(";");
+        }
+        next();
+    }
+
+    private void parseTerms(String variable, String end) {
+        Map<String, double[][]> variableTerms = new LinkedHashMap<>();
+        terms.put(variable, variableTerms);
+
+        while (!peek().equals(end)) {
+            String keyword = next();
+            switch (keyword) {
+                case "TERM" -> {
+                    String term = next();
+                    expect(":=");
+                    List<double[]> points = new ArrayList<>();
+                    while (peek().equals("(")) {
+                        next();
+                        double x = number();
+                        expect(",");
+                        double y = number();
+                        expect(")");
+                        points.add(new double[] { x, y });
+                    }
+                    if (points.isEmpty()) throw unsupported("non piece-wise linear term " + variable + "." + term);
+                    expect(";");
+                    double[][] xy = new double[2][points.size()];
+                    for (int i = 0; i < points.size(); i++) {
+                        xy[0][i] = points.get(i)[0];
+                        xy[1][i] = points.get(i)[1];
+                    }
+                    variableTerms.put(term, xy);
+                }
+                case "METHOD" -> {
+                    expect(":");
+                    String method = next();
+                    if (!method.equals("COG")) throw unsupported("defuzzification method " + method);
+                    expect(";");
+                }
+                case "DEFAULT" -> {
+                    expect(":=");
+                    defaultValue = number();
+                    expect(";");
+                }
+                default -> throw unsupported(keyword + " in " + variable);
+            }
+        }
+        next();
+    }
+
+    private void parseRuleBlock() {
+        next();   // rule block name
+        while (!peek().equals("END_RULEBLOCK")) {
+            String keyword = next();
+            switch (keyword) {
+                case "AND" -> operator("MIN");
+                case "OR" -> operator("MAX");
+                case "ACT" -> operator("MIN");
+                case "ACCU" -> operator("MAX");
+                case "RULE" -> {
+                    next();   // rule number
+                    expect(":");
+                    expect("IF");
+                    List<String> condition = new ArrayList<>();
+                    while (!peek().equals("THEN")) {
+                        condition.add(next());
+                    }
+                    next();
+                    String variable = next();
+                    if (!variable.equals(output)) throw unsupported("rule consequent on " + variable);
+                    expect("IS");
+                    String term = next();
+                    double weight = 1.0;
+                    if (peek().equals("WITH")) {
+                        next();
+                        weight = number();
+                    }
+                    expect(";");
+                    rules.add(new Object[] { condition, term, weight });
+                }
+                default -> throw unsupported(keyword + " in rule block");
+            }
+        }
+        next();
+    }
+
+    private void operator(String required) {
+        expect(":");
+        String method = next();
+        if (!method.equals(required)) throw unsupported("operator " + method);
+        expect(";");
+    }
+
+    // ---- code generation ----
+
+    private CompiledFuzzyEvaluator build() {
+        if (output == null || !terms.containsKey(output)) throw unsupported("missing DEFUZZIFY block");
+
+        // input term slots
+        Map<String, Integer> slotOf = new LinkedHashMap<>();
+        List<Integer> inputOfSlot = new ArrayList<>();
+        List<double[][]> slotTerms = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            Map<String, double[][]> variableTerms = terms.get(inputs.get(i));
+            if (variableTerms == null) throw unsupported("missing FUZZIFY block for " + inputs.get(i));
+            for (Map.Entry<String, double[][]> term : variableTerms.entrySet()) {
+                slotOf.put(inputs.get(i) + "." + term.getKey(), slotTerms.size());
+                inputOfSlot.add(i);
+                slotTerms.add(term.getValue());
+            }
+        }
+
+        // output terms and the defuzzification grid over the output universe
+        Map<String, double[][]> outputTerms = terms.get(output);
+        List<String> outputNames = new ArrayList<>(outputTerms.keySet());
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double[][] xy : outputTerms.values()) {
+            min = Math.min(min, xy[0][0]);
+            max = Math.max(max, xy[0][xy[0].length - 1]);
+        }
+        double step = (max - min) / COG_POINTS;
+        double[] gridX = new double[COG_POINTS];
+        for (int i = 0; i < COG_POINTS; i++) {
+            gridX[i] = min + i * step;
+        }
+        double[][] outputTable = new double[outputNames.size()][COG_POINTS];
+        for (int t = 0; t < outputNames.size(); t++) {
+            double[][] xy = outputTerms.get(outputNames.get(t));
+            for (int i = 0; i < COG_POINTS; i++) {
+                outputTable[t][i] = CompiledFuzzyEvaluator.membership(xy[0], xy[1], gridX[i]);
+            }
+        }
+
+        // rules
+        int[][] programs = new int[rules.size()][];
+        double[] weights = new double[rules.size()];
+        int[] outputTerm = new int[rules.size()];
+        for (int r = 0; r < rules.size(); r++) {
+            @SuppressWarnings("unchecked")
+            List<String> condition = (List<String>) rules.get(r)[0];
+            List<Integer> program = new ArrayList<>();
+            int end = compileOr(condition, 0, slotOf, program);
+            if (end != condition.size()) throw unsupported("rule condition " + String.join(" ", condition));
+
+            programs[r] = program.stream().mapToInt(Integer::intValue).toArray();
+            weights[r] = (Double) rules.get(r)[2];
+            outputTerm[r] = outputNames.indexOf((String) rules.get(r)[1]);
+            if (outputTerm[r] < 0) throw unsupported("unknown output term " + rules.get(r)[1]);
+        }
+
+        double[][] slotX = new double[slotTerms.size()][];
+        double[][] slotY = new double[slotTerms.size()][];
+        for (int i = 0; i < slotTerms.size(); i++) {
+            slotX[i] = slotTerms.get(i)[0];
+            slotY[i] = slotTerms.get(i)[1];
+        }
+
+        return new CompiledFuzzyEvaluator(inputs.toArray(new String[0]),
+                inputOfSlot.stream().mapToInt(Integer::intValue).toArray(), slotX, slotY,
+                programs, weights, outputTerm, gridX, outputTable,
+                Double.isNaN(defaultValue) ? 0 : defaultValue);
+    }
+
+    // or := and (OR and)*
+    private int compileOr(List<String> t, int i, Map<String, Integer> slotOf, List<Integer> program) {
+        i = compileAnd(t, i, slotOf, program);
+        while (i < t.size() && t.get(i).equals("OR")) {
+            i = compileAnd(t, i + 1, slotOf, program);
+            program.add(CompiledFuzzyEvaluator.OP_OR);
+        }
+        return i;
+    }
+
+    // and := atom (AND atom)*
+    private int compileAnd(List<String> t, int i, Map<String, Integer> slotOf, List<Integer> program) {
+        i = compileAtom(t, i, slotOf, program);
+        while (i < t.size() && t.get(i).equals("AND")) {
+            i = compileAtom(t, i + 1, slotOf, program);
+            program.add(CompiledFuzzyEvaluator.OP_AND);
+        }
+        return i;
+    }
+
+    // atom := ( or ) | NOT atom | variable IS [NOT] term
+    private int compileAtom(List<String> t, int i, Map<String, Integer> slotOf, List<Integer> program) {
+        if (i >= t.size()) throw unsupported("truncated rule condition");
+        if (t.get(i).equals("(")) {
+            i = compileOr(t, i + 1, slotOf, program);
+            if (i >= t.size() || !t.get(i).equals(")")) throw unsupported("unbalanced parentheses");
+            return i + 1;
+        }
+        if (t.get(i).equals("NOT")) {
+            i = compileAtom(t, i + 1, slotOf, program);
+            program.add(CompiledFuzzyEvaluator.OP_NOT);
+            return i;
+        }
+        if (i + 2 >= t.size() || !t.get(i + 1).equals("IS")) throw unsupported("rule condition near " + t.get(i));
+        boolean negated = t.get(i + 2).equals("NOT");
+        int termAt = negated ? i + 3 : i + 2;
+        Integer slot = slotOf.get(t.get(i) + "." + t.get(termAt));
+        if (slot == null) throw unsupported("unknown term " + t.get(i) + " IS " + t.get(termAt));
+        program.add(slot);
+        if (negated) {
+            program.add(CompiledFuzzyEvaluator.OP_NOT);
+        }
+        return termAt + 1;
+    }
+
+    // ---- tokens ----
+
+    private static List<String> tokenize(String fcl) {
+        String text = fcl.replaceAll("(?s)\\(\\*.*?\\*\\)", " ").replaceAll("//[^\\n]*", " ");
+        List<String> result = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == ':' && i + 1 < text.length() && text.charAt(i + 1) == '=') {
+                result.add(":=");
+                i += 2;
+            } else if ("():;,".indexOf(c) >= 0) {
+                result.add(String.valueOf(c));
+                i++;
+            } else {
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                        && "():;,".indexOf(text.charAt(i)) < 0) {
+                    i++;
+                }
+                result.add(text.substring(start, i));
+            }
+        }
+        return result;
+    }
+
+    private String peek() {
+        if (pos >= tokens.size()) throw unsupported("unexpected end of FCL");
+        return tokens.get(pos);
+    }
+
+    private String next() {
+        String token = peek();
+        pos++;
+        return token;
+    }
+
+    private void expect(String token) {
+        String found = next();
+        if (!found.equals(token)) {
+            throw new IllegalArgumentException("Expected '" + token + "' but found '" + found + "'");
+        }
+    }
+
+    private double number() {
+        return Double.parseDouble(next());
+    }
+
+    private static IllegalArgumentException unsupported(String what) {
+        return new IllegalArgumentException("FCL compiler does not support " + what);
+    }
+}
@@ -0,0 +1,167 @@
+package fuzzy;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import net.sourceforge.jFuzzyLogic.FIS;
+import net.sourceforge.jFuzzyLogic.FunctionBlock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// loads film_quality.fcl from the classpath once and evaluates it on a fixed pool of function blocks,
+// all parsed at startup. a FunctionBlock keeps its inputs and output in fields, so one block is used
+// by one thread at a time; a thread finding none free waits for one.
+// unless -Dfuzzy.compiled=false, the rules are also compiled by FclCompiler and the compiled
+// evaluator is used whenever it agrees with jFuzzyLogic on a startup sample
+public class FuzzyEngine {
+
+    private static final String FCL_RESOURCE = "/fuzzy/film_quality.fcl";
+    private static final String FUNCTION_BLOCK = "filmQuality";
+    // only evaluations asked for through evaluate(), not the startup comparison
+    private static final LatencyHistogram FUNCTION_BLOCK_LATENCY = Metrics.histogram(Metrics.FUNCTION_BLOCK);
+    private static final LatencyHistogram COMPILED_LATENCY = Metrics.histogram(Metrics.COMPILED_RULES);
+
+    private static volatile FuzzyEngine instance;
+
+    private final String fcl;
+    private final BlockingQueue<FunctionBlock> pool;
+    private final CompiledFuzzyEvaluator compiled;
+    private final int[] inputIndexes = new int[5];
+
+    private FuzzyEngine() {
+        try (InputStream is = FuzzyEngine.class.getResourceAsStream(FCL_RESOURCE)) {
+            if (is == null) throw new IllegalArgumentException("FCL not found: " + FCL_RESOURCE);
+            fcl = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // one block per core, more threads could not evaluate at once anyway
+        int blocks = Runtime.getRuntime().availableProcessors();
+        pool = new ArrayBlockingQueue<>(blocks);
+        for (int i = 0; i < blocks; i++) {
+            pool.offer(createFunctionBlock());
+        }
+        System.out.println("Loaded function block: " + FUNCTION_BLOCK + " (" + blocks + " instances)");
+
+        compiled = Boolean.parseBoolean(System.getProperty("fuzzy.compiled", "true")) ? compile() : null;
+    }
+
+    private CompiledFuzzyEvaluator compile() {
+        CompiledFuzzyEvaluator evaluator;
+        try {
+            evaluator = FclCompiler.compile(fcl, FUNCTION_BLOCK);
+            inputIndexes[0] = evaluator.inputIndex("directorQuality");
+            inputIndexes[1] = evaluator.inputIndex("actingQuality");
+            inputIndexes[2] = evaluator.inputIndex("storyQuality");
+            inputIndexes[3] = evaluator.inputIndex("visualEffects");
+            inputIndexes[4] = evaluator.inputIndex("culturalImpact");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Fuzzy rules not compiled, using jFuzzyLogic: " + e.getMessage());
+            return null;
+        }
+
+        // spot check against the interpreter before trusting the compiled rules
+        Random random = new Random(42);
+        double[] in = new double[5];
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < in.length; j++) {
+                in[j] = random.nextDouble() * 10;
+            }
+            double expected = evaluateInterpreted(in[0], in[1], in[2], in[3], in[4]);
+            double actual = evaluateCompiled(evaluator, in[0], in[1], in[2], in[3], in[4]);
+            if (Math.abs(expected - actual) > CompiledFuzzyEvaluator.TOLERANCE) {
+                System.out.println("Compiled fuzzy rules differ from jFuzzyLogic (" + actual + " vs " + expected
+                        + "), using jFuzzyLogic");
+                return null;
+            }
+        }
+        System.out.println("Compiled fuzzy rules: " + FUNCTION_BLOCK);
+        return evaluator;
+    }
+
+    public static FuzzyEngine getInstance() {
+        FuzzyEngine local = instance;
+        if (local == null) {
+            synchronized (FuzzyEngine.class) {
+                local = instance;
+                if (local == null) {
+                    local = new FuzzyEngine();
+                    instance = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    public double evaluate(double directorQuality, double actingQuality, double storyQuality,
+                           double visualEffects, double culturalImpact) {
+        long start = System.nanoTime();
+        if (compiled != null) {
+            double quality = evaluateCompiled(compiled, directorQuality, actingQuality, storyQuality, visualEffects, culturalImpact);
+            COMPILED_LATENCY.record(System.nanoTime() - start);
+            return quality;
+        }
+        double quality = evaluateInterpreted(directorQuality, actingQuality, storyQuality, visualEffects, culturalImpact);
+        FUNCTION_BLOCK_LATENCY.record(System.nanoTime() - start);
+        return quality;
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    public CompiledFuzzyEvaluator compileRules() {
+        return FclCompiler.compile(fcl, FUNCTION_BLOCK);
+    }
+
+    private double evaluateCompiled(CompiledFuzzyEvaluator evaluator, double directorQuality, double actingQuality,
+                                    double storyQuality, double visualEffects, double culturalImpact) {
+        double[] in = evaluator.inputBuffer();
+        in[inputIndexes[0]] = directorQuality;
+        in[inputIndexes[1]] = actingQuality;
+        in[inputIndexes[2]] = storyQuality;
+        in[inputIndexes[3]] = visualEffects;
+        in[inputIndexes[4]] = culturalImpact;
+        return evaluator.evaluate(in);
+    }
+
+    // jFuzzyLogic's FunctionBlock.evaluate() on a pooled block, never parsing one here
+    public double evaluateInterpreted(double directorQuality, double actingQuality, double storyQuality,
+                                      double visualEffects, double culturalImpact) {
+        FunctionBlock fb;
+        try {
+            fb = pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a function block", e);
+        }
+
+        try {
+            fb.setVariable("directorQuality", directorQuality);
+            fb.setVariable("actingQuality", actingQuality);
+            fb.setVariable("storyQuality", storyQuality);
+            fb.setVariable("visualEffects", visualEffects);
+            fb.setVariable("culturalImpact", culturalImpact);
+
+            fb.evaluate();
+
+            return fb.getVariable("quality").getValue();
+        } finally {
+            pool.offer(fb);
+        }
+    }
+
+    private FunctionBlock createFunctionBlock() {
+        FIS fis = FIS.createFromString(fcl, true);
+        if (fis == null) {
+            throw new RuntimeException("Cannot parse FCL file: film_quality.fcl");
+        }
+        return fis.getFunctionBlock(FUNCTION_BLOCK);
+    }
+}
@@ -1,128 +1,173 @@
 package fuzzy;
 
-import net.sourceforge.jFuzzyLogic.FIS;
-import net.sourceforge.jFuzzyLogic.FunctionBlock;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import metrics.QualityAssessmentEvent;
+import ontology.FilmGraph;
+import ontology.QueryRegistry;
+import ontology.TitleIndex;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 public class FuzzyFilmQualitySystem {
 
-    private FIS fis;
-    private FunctionBlock fb;
+    private static final LatencyHistogram CRITERIA_LATENCY = Metrics.histogram(Metrics.FUZZY_CRITERIA);
+
+    private final FuzzyEngine engine;
 
     public FuzzyFilmQualitySystem() {
-        String fclPath = "src/main/java/fuzzy/film_quality.fcl";
-        fis = FIS.load(fclPath, true);
+        engine = FuzzyEngine.getInstance();
+    }
 
-        if (fis == null) {
-            throw new RuntimeException("Cannot load FCL file: film_quality.fcl");
+    public FilmQualityResult evaluateFilm(String filmTitle, Model model, TitleIndex titleIndex) {
+        QualityAssessmentEvent event = new QualityAssessmentEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        String filmIri = titleIndex.findFilm(filmTitle);
+        FilmData data = filmIri == null ? null : extractFilmData(filmIri, model);
+        long extracted = System.nanoTime();
+        long[] nanos = new long[2];
+        FilmQualityResult result = data == null ? null : assess(filmTitle, data, nanos);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.scope = "film";
+            event.title = filmTitle;
+            event.resultCount = result == null ? 0 : 1;
+            event.qualityScore = result == null ? 0 : result.qualityScore;
+            event.dataExtraction = extracted - start;
+            event.criteria = nanos[0];
+            event.inference = nanos[1];
+            event.assessment = nanos[0] + nanos[1];
+            event.commit();
         }
-
-        fb = fis.getFunctionBlock("filmQuality");
-        System.out.println("Loaded function block: " + fb.getName());
+        return result;
     }
 
-    public FilmQualityResult evaluateFilm(String filmTitle, Model model) {
-        FilmData data = extractFilmData(filmTitle, model);
+    // assesses every film with an IMDb rating, best first. film data comes from one grouped query
+    // and the films are evaluated in parallel
+    public List<FilmQualityResult> evaluateCatalog(Model model) {
+        QualityAssessmentEvent event = new QualityAssessmentEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        // first row per film, like the single-film lookup
+        Map<String, String> titles = new LinkedHashMap<>();
+        Map<String, FilmData> films = new LinkedHashMap<>();
 
-        if (data == null) {
+        QueryRegistry.getInstance().select(QueryRegistry.QUALITY_CATALOG, model, rs -> {
+            while (rs.hasNext()) {
+                QuerySolution sol = rs.next();
+                String filmIri = sol.getResource("film").getURI();
+                if (films.containsKey(filmIri)) {
+                    continue;
+                }
+
+                Set<String> awards = new HashSet<>();
+                String awardsStr = sol.contains("awards") ? sol.getLiteral("awards").getString() : "";
+                if (!awardsStr.isEmpty()) {
+                    awards.addAll(Arrays.asList(awardsStr.split("\\|")));
+                }
+
+                titles.put(filmIri, sol.getLiteral("title").getString());
+                films.put(filmIri, toFilmData(sol, awards));
+            }
             return null;
+        });
+
+        long extracted = System.nanoTime();
+
+        List<FilmQualityResult> ranking = films.entrySet().parallelStream()
+                .map(e -> assess(titles.get(e.getKey()), e.getValue(), null))
+                .sorted(Comparator.comparingDouble((FilmQualityResult r) -> r.qualityScore).reversed()
+                        .thenComparing(r -> r.filmTitle))
+                .collect(Collectors.toList());
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.scope = "catalog";
+            event.resultCount = ranking.size();
+            event.dataExtraction = extracted - start;
+            event.assessment = System.nanoTime() - extracted;
+            event.commit();
         }
+        return ranking;
+    }
 
+    // nanos, if given, gets the criteria and inference times
+    private FilmQualityResult assess(String filmTitle, FilmData data, long[] nanos) {
         // calculate criteria
+        long start = System.nanoTime();
         double directorQuality = calculateDirectorQuality(data);
         double actingQuality = calculateActingQuality(data);
         double storyQuality = calculateStoryQuality(data);
         double visualEffects = calculateVisualEffects(data);
         double culturalImpact = calculateCulturalImpact(data);
-
-        // set fuzzy inputs
-        fb.setVariable("directorQuality", directorQuality);
-        fb.setVariable("actingQuality", actingQuality);
-        fb.setVariable("storyQuality", storyQuality);
-        fb.setVariable("visualEffects", visualEffects);
-        fb.setVariable("culturalImpact", culturalImpact);
-
-        fb.evaluate();
-
-        double quality = fb.getVariable("quality").getValue();
+        long computed = System.nanoTime();
+        CRITERIA_LATENCY.record(computed - start);
+
+        // fuzzy inference
+        double quality = engine.evaluate(directorQuality, actingQuality, storyQuality, visualEffects, culturalImpact);
+        if (nanos != null) {
+            nanos[0] = computed - start;
+            nanos[1] = System.nanoTime() - computed;
+        }
 
         return new FilmQualityResult(filmTitle, quality, data,
                 directorQuality, actingQuality, storyQuality, visualEffects, culturalImpact);
     }
 
-    private FilmData extractFilmData(String filmTitle, Model model) {
-        // get basic film data and genres
-        String sparql1 =
-                "PREFIX : <http://example.org/films#> " +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                        "SELECT ?imdb ?boxOffice ?budget ?year " +
-                        "       (GROUP_CONCAT(DISTINCT ?genreName; separator=\",\") AS ?genres) " +
-                        "WHERE { " +
-                        "  ?film rdf:type :Film ; " +
-                        "        :title ?title ; " +
-                        "        :imdbRating ?imdb . " +
-                        "  OPTIONAL { ?film :boxOfficeUSD ?boxOffice } " +
-                        "  OPTIONAL { ?film :budgetUSD ?budget } " +
-                        "  OPTIONAL { ?film :releaseYear ?year } " +
-                        "  OPTIONAL { ?film :hasGenre ?g . ?g :genreName ?genreName } " +
-                        "  FILTER(LCASE(STR(?title)) = LCASE(\"" + filmTitle + "\")) " +
-                        "} " +
-                        "GROUP BY ?film ?imdb ?boxOffice ?budget ?year";
-
-        // defaults
-        double imdb = 0, boxOffice = 0, budget = 1;
-        int year = 2000;
-        String genres = "";
+    // basic data and awards come from one snapshot, so a film changed meanwhile is never mixed
+    private FilmData extractFilmData(String filmIri, Model model) {
+        return FilmGraph.read(model, () -> readFilmData(filmIri, model));
+    }
 
-        try (QueryExecution qexec = QueryExecution.create()
-                .query(QueryFactory.create(sparql1))
-                .model(model)
-                .build()) {
+    private FilmData readFilmData(String filmIri, Model model) {
+        QuerySolutionMap film = new QuerySolutionMap();
+        film.add("film", model.createResource(filmIri));
 
-            ResultSet rs = qexec.execSelect();
-            if (!rs.hasNext()) {
-                return null;
-            }
+        QueryRegistry queries = QueryRegistry.getInstance();
 
-            QuerySolution sol = rs.next();
-            imdb = sol.getLiteral("imdb").getDouble();
-            boxOffice = sol.contains("boxOffice") ? sol.getLiteral("boxOffice").getDouble() : 0;
-            budget = sol.contains("budget") ? sol.getLiteral("budget").getDouble() : 1;
-            genres = sol.contains("genres") ? sol.getLiteral("genres").getString() : "";
-
-            if (sol.contains("year")) {
-                String yearStr = sol.getLiteral("year").getString();
-                year = Integer.parseInt(yearStr.substring(0, 4));
-            }
+        // get basic film data and genres
+        QuerySolution basic = queries.select(QueryRegistry.FILM_QUALITY, model, film,
+                rs -> rs.hasNext() ? rs.next() : null);
+        if (basic == null) {
+            return null;
         }
 
         // get awards (categorized)
-        String sparql2 =
-                "PREFIX : <http://example.org/films#> " +
-                        "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
-                        "SELECT ?awardName " +
-                        "WHERE { " +
-                        "  ?film rdf:type :Film ; " +
-                        "        :title ?title ; " +
-                        "        :wonAward ?award . " +
-                        "  ?award :awardName ?awardName . " +
-                        "  FILTER(LCASE(STR(?title)) = LCASE(\"" + filmTitle + "\")) " +
-                        "}";
-
-        Set<String> awards = new HashSet<>();
-        try (QueryExecution qexec = QueryExecution.create()
-                .query(QueryFactory.create(sparql2))
-                .model(model)
-                .build()) {
-
-            ResultSet rs = qexec.execSelect();
+        Set<String> awards = queries.select(QueryRegistry.FILM_AWARDS, model, film, rs -> {
+            Set<String> names = new HashSet<>();
             while (rs.hasNext()) {
-                awards.add(rs.next().getLiteral("awardName").getString());
+                names.add(rs.next().getLiteral("awardName").getString());
             }
+            return names;
+        });
+
+        return toFilmData(basic, awards);
+    }
+
+    private FilmData toFilmData(QuerySolution sol, Set<String> awards) {
+        double imdb = sol.getLiteral("imdb").getDouble();
+        double boxOffice = sol.contains("boxOffice") ? sol.getLiteral("boxOffice").getDouble() : 0;
+        double budget = sol.contains("budget") ? sol.getLiteral("budget").getDouble() : 1;
+        String genres = sol.contains("genres") ? sol.getLiteral("genres").getString() : "";
+
+        int year = 2000;
+
+        if (sol.contains("year")) {
+            String yearStr = sol.getLiteral("year").getString();
+            year = Integer.parseInt(yearStr.substring(0, 4));
         }
 
         return new FilmData(imdb, boxOffice, budget, year, genres, awards);
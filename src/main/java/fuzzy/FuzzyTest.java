@@ -1,9 +1,61 @@
 package fuzzy;
 
-import net.sourceforge.jFuzzyLogic.FIS;
-
+// sweeps the input space and compares the compiled rules with jFuzzyLogic
+// usage: FuzzyTest [step, default 0.5]
 public class FuzzyTest {
     public static void main(String[] args) {
-        System.out.println("jFuzzyLogic loaded successfully!");
+        double step = args.length > 0 ? Double.parseDouble(args[0]) : 0.5;
+
+        FuzzyEngine engine = FuzzyEngine.getInstance();
+        CompiledFuzzyEvaluator compiled = engine.compileRules();
+        double[] in = new double[compiled.inputCount()];
+        int director = compiled.inputIndex("directorQuality");
+        int acting = compiled.inputIndex("actingQuality");
+        int story = compiled.inputIndex("storyQuality");
+        int vfx = compiled.inputIndex("visualEffects");
+        int culture = compiled.inputIndex("culturalImpact");
+
+        long points = 0;
+        double maxDiff = 0;
+        long interpretedNanos = 0;
+        long compiledNanos = 0;
+
+        for (double d = 0; d <= 10; d += step)
+            for (double a = 0; a <= 10; a += step)
+                for (double s = 0; s <= 10; s += step)
+                    for (double v = 0; v <= 10; v += step)
+                        for (double c = 0; c <= 10; c += step) {
+                            long t0 = System.nanoTime();
+                            double expected = engine.evaluateInterpreted(d, a, s, v, c);
+                            long t1 = System.nanoTime();
+                            in[director] = d;
+                            in[acting] = a;
+                            in[story] = s;
+                            in[vfx] = v;
+                            in[culture] = c;
+                            double actual = compiled.evaluate(in);
+                            long t2 = System.nanoTime();
+
+                            interpretedNanos += t1 - t0;
+                            compiledNanos += t2 - t1;
+                            points++;
+
+                            double diff = Math.abs(expected - actual);
+                            if (diff > maxDiff) {
+                                maxDiff = diff;
+                                System.out.printf("max diff %.6f at (%.1f, %.1f, %.1f, %.1f, %.1f): %.4f vs %.4f%n",
+                                        diff, d, a, s, v, c, actual, expected);
+                            }
+                        }
+
+        System.out.printf("%d points, max diff %.6f (tolerance %.2f)%n", points, maxDiff, CompiledFuzzyEvaluator.TOLERANCE);
+        System.out.printf("jFuzzyLogic %.2f us/eval, compiled %.2f us/eval%n",
+                interpretedNanos / 1000.0 / points, compiledNanos / 1000.0 / points);
+
+        if (maxDiff > CompiledFuzzyEvaluator.TOLERANCE) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
     }
-}
\ No newline at end of file
+}
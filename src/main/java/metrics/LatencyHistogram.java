@@ -0,0 +1,187 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// latency of one stage in nanoseconds, bucketed like an HDR histogram: exact below 128 ns, then 64
+// buckets per power of two, so any percentile is within 1.6% of the recorded value.
+// recording is one bucket increment and never allocates; values above ~2.4 hours land in the top bucket
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int MAX_BIT = 42;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_BIT - SUB_BUCKET_BITS + 1) * HALF;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos) {
+        if (!Metrics.ENABLED) {
+            return;
+        }
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.getAndIncrement(index(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    // the counts are read one by one, so a snapshot taken while recording may be off by the
+    // few values recorded meanwhile
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = counts.get(i);
+        }
+        return new Snapshot(buckets, count.sum(), totalNanos.sum(), maxNanos.get());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return snapshot().getMeanMillis();
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return snapshot().percentileMillis(50);
+    }
+
+    @Override
+    public double getP90Millis() {
+        return snapshot().percentileMillis(90);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return snapshot().percentileMillis(99);
+    }
+
+    @Override
+    public double getP999Millis() {
+        return snapshot().percentileMillis(99.9);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+    static int index(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int bit = 63 - Long.numberOfLeadingZeros(nanos);
+        if (bit > MAX_BIT) {
+            return BUCKETS - 1;
+        }
+        int shift = bit - SUB_BUCKET_BITS + 1;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (nanos >>> shift) - HALF;
+    }
+
+    // highest value that falls into the bucket
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public static class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Snapshot(long[] buckets, long count, long totalNanos, long maxNanos) {
+            this.buckets = buckets;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        // what was recorded since the earlier snapshot; its max is the top of the highest bucket used.
+        // after a reset in between, everything recorded since the reset
+        public Snapshot since(Snapshot earlier) {
+            if (count < earlier.count) {
+                return this;
+            }
+            long[] diff = new long[BUCKETS];
+            long max = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                diff[i] = Math.max(0, buckets[i] - earlier.buckets[i]);
+                if (diff[i] > 0) {
+                    max = Math.min(highestValue(i), maxNanos);
+                }
+            }
+            return new Snapshot(diff, count - earlier.count, totalNanos - earlier.totalNanos, max);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        // value at or below which the given share of the recorded values lie, never above the max
+        public double percentileMillis(double percentile) {
+            long total = 0;
+            for (long c : buckets) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), maxNanos) / 1e6;
+                }
+            }
+            return maxNanos / 1e6;
+        }
+    }
+}
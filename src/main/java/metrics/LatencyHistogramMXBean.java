@@ -0,0 +1,24 @@
+package metrics;
+
+// one stage as seen from JMX, under film-recommender:type=Latency,stage=<name>.
+// everything is since startup or the last reset
+public interface LatencyHistogramMXBean {
+
+    String getName();
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    void reset();
+}
@@ -0,0 +1,119 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// latency histograms per request stage, each published as an MXBean under
+// film-recommender:type=Latency,stage=<name> the first time the stage is used.
+// -Dmetrics.enabled=false stops recording; -Dmetrics.logInterval=<seconds> prints the stages that
+// ran in every interval, with percentiles of that interval only
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("metrics.enabled", "true"));
+    public static final long LOG_INTERVAL_SECONDS = Long.getLong("metrics.logInterval", 0);
+
+    public static final String ONTOLOGY_LOAD = "ontology.load";
+    public static final String SPARQL = "sparql.";
+    public static final String CASE_BASE_BUILD = "cbr.caseBaseBuild";
+    public static final String CASE_BASE_REFRESH = "cbr.caseBaseRefresh";
+    public static final String SIMILARITY = "cbr.similarity";
+    public static final String TOP_K = "cbr.topK";
+    public static final String NEIGHBOR_LOOKUP = "cbr.neighborLookup";
+    public static final String FUZZY_CRITERIA = "fuzzy.criteria";
+    public static final String FUNCTION_BLOCK = "fuzzy.functionBlock";
+    public static final String COMPILED_RULES = "fuzzy.compiledRules";
+
+    private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    static {
+        if (ENABLED && LOG_INTERVAL_SECONDS > 0) {
+            startLogging(LOG_INTERVAL_SECONDS);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // the histogram of a stage, created and registered on first use; callers keep it in a field
+    public static LatencyHistogram histogram(String stage) {
+        LatencyHistogram histogram = histograms.get(stage);
+        if (histogram != null) {
+            return histogram;
+        }
+        return histograms.computeIfAbsent(stage, Metrics::register);
+    }
+
+    public static Map<String, LatencyHistogram.Snapshot> snapshot() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new HashMap<>();
+        histograms.forEach((stage, histogram) -> snapshots.put(stage, histogram.snapshot()));
+        return snapshots;
+    }
+
+    public static void printStats(PrintStream out) {
+        print(out, snapshot());
+    }
+
+    private static LatencyHistogram register(String stage) {
+        LatencyHistogram histogram = new LatencyHistogram(stage);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("film-recommender:type=Latency,stage=" + ObjectName.quote(stage));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(histogram, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Cannot publish latency of " + stage + " over JMX: " + e.getMessage());
+        }
+        return histogram;
+    }
+
+    private static void print(PrintStream out, Map<String, LatencyHistogram.Snapshot> snapshots) {
+        List<String> stages = new ArrayList<>(snapshots.keySet());
+        stages.removeIf(stage -> snapshots.get(stage).getCount() == 0);
+        if (stages.isEmpty()) {
+            return;
+        }
+        stages.sort(null);
+        out.printf("%-32s %10s %10s %10s %10s %10s %10s%n", "Stage", "Count", "Mean (ms)", "p50", "p99", "p999", "Max");
+        for (String stage : stages) {
+            LatencyHistogram.Snapshot s = snapshots.get(stage);
+            out.printf("%-32s %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n", stage, s.getCount(), s.getMeanMillis(),
+                    s.percentileMillis(50), s.percentileMillis(99), s.percentileMillis(99.9), s.getMaxMillis());
+        }
+    }
+
+    private static void startLogging(long seconds) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-log");
+            t.setDaemon(true);
+            return t;
+        });
+        Map<String, LatencyHistogram.Snapshot> previous = new HashMap<>();
+        timer.scheduleAtFixedRate(() -> {
+            Map<String, LatencyHistogram.Snapshot> current = snapshot();
+            Map<String, LatencyHistogram.Snapshot> interval = new HashMap<>();
+            current.forEach((stage, s) -> {
+                LatencyHistogram.Snapshot before = previous.get(stage);
+                interval.put(stage, before == null ? s : s.since(before));
+            });
+            previous.clear();
+            previous.putAll(current);
+            if (interval.values().stream().anyMatch(s -> s.getCount() > 0)) {
+                System.out.println("[metrics] last " + seconds + " s");
+                print(System.out, interval);
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+}
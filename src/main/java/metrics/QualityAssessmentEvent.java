@@ -0,0 +1,48 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// a fuzzy quality assessment of one film, or of the whole catalog for the ranking. for the
+// catalog, criteria and inference are not split and assessment covers both, over all threads
+@Name("filmrecommender.QualityAssessment")
+@Label("Quality Assessment")
+@Category("Film Recommender")
+@Description("Fuzzy quality assessment of a film or of the whole catalog")
+@StackTrace(false)
+public class QualityAssessmentEvent extends jdk.jfr.Event {
+
+    @Label("Scope")
+    @Description("film or catalog")
+    public String scope;
+
+    @Label("Title")
+    public String title;
+
+    @Label("Result Count")
+    public int resultCount;
+
+    @Label("Quality Score")
+    public double qualityScore;
+
+    @Label("Data Extraction")
+    @Description("Title lookup and the SPARQL queries for the film data")
+    @Timespan(Timespan.NANOSECONDS)
+    public long dataExtraction;
+
+    @Label("Criteria")
+    @Timespan(Timespan.NANOSECONDS)
+    public long criteria;
+
+    @Label("Inference")
+    @Timespan(Timespan.NANOSECONDS)
+    public long inference;
+
+    @Label("Assessment")
+    @Timespan(Timespan.NANOSECONDS)
+    public long assessment;
+}
@@ -0,0 +1,69 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.RDFNode;
+
+import java.util.Iterator;
+
+// one page of recommendations, from the request to the last row handed out. callers fill the
+// fields only after shouldCommit(), so a disabled event costs no more than begin() and end()
+@Name("filmrecommender.Recommend")
+@Label("Recommend")
+@Category("Film Recommender")
+@Description("One page of recommendations for a set of criteria")
+@StackTrace(false)
+public class RecommendEvent extends jdk.jfr.Event {
+
+    @Label("Mode")
+    public String mode;
+
+    @Label("Criteria")
+    public String criteria;
+
+    @Label("Page Size")
+    public int pageSize;
+
+    @Label("Page")
+    @Description("Page number, 1 for the first page")
+    public int page;
+
+    @Label("Result Count")
+    @Description("Rows handed out: genres are joined into one row, but a film with several release years or directors gives a row for each")
+    public int resultCount;
+
+    @Label("More Pages")
+    public boolean morePages;
+
+    @Label("First Row")
+    @Description("Time until the engine produced the first row")
+    @Timespan(Timespan.NANOSECONDS)
+    public long firstRow;
+
+    // "G=SciFi yearFrom=1990", local names for resources and lexical forms for literals
+    public static String criteria(QuerySolutionMap bindings) {
+        StringBuilder sb = new StringBuilder();
+        Iterator<String> names = bindings.varNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            RDFNode value = bindings.get(name);
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(name).append('=');
+            if (value.isURIResource()) {
+                sb.append(value.asResource().getLocalName());
+            } else if (value.isLiteral()) {
+                sb.append(value.asLiteral().getLexicalForm());
+            } else {
+                sb.append(value);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// one similar-films request: bringing the case base up to date, retrieval and decoding the cases
+@Name("filmrecommender.SimilarFilms")
+@Label("Similar Films")
+@Category("Film Recommender")
+@Description("Case-based retrieval of the films most similar to one film")
+@StackTrace(false)
+public class SimilarFilmsEvent extends jdk.jfr.Event {
+
+    @Label("Title")
+    public String title;
+
+    @Label("Top N")
+    public int topN;
+
+    @Label("Source")
+    @Description("neighborTable when precomputed neighbors answered, live when the cases were scored")
+    public String source;
+
+    @Label("Case Count")
+    public int caseCount;
+
+    @Label("Result Count")
+    public int resultCount;
+
+    @Label("Case Base Update")
+    @Description("Time spent applying model changes to the case base first")
+    @Timespan(Timespan.NANOSECONDS)
+    public long caseBaseUpdate;
+
+    @Label("Retrieval")
+    @Description("Scoring and top-K selection, or the neighbor table lookup")
+    @Timespan(Timespan.NANOSECONDS)
+    public long retrieval;
+
+    @Label("Decoding")
+    @Timespan(Timespan.NANOSECONDS)
+    public long decoding;
+}
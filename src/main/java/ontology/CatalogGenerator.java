@@ -0,0 +1,212 @@
+package ontology;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+// synthetic film catalog in Turtle, following the films.owl TBox: directors, actors and films
+// with title, year, IMDb rating, budget, box office, runtime, genres, cast, languages and awards.
+// genres, languages and awards are the ones film-instances.owl names, so the usual criteria work.
+// director and actor popularity are Zipfian, Director0 and Actor0 being the most popular.
+// lines are written as they are generated, so memory does not grow with the catalog.
+// the same settings and seed always give the same file
+public class CatalogGenerator {
+
+    private static final String[] GENRES = {
+            "Drama", "Comedy", "Action", "Thriller", "Crime", "Adventure", "Romance", "SciFi",
+            "Horror", "Fantasy", "Mystery", "Animation", "Biography", "Family", "War", "Music"
+    };
+    private static final String[] LANGUAGES = {
+            "English", "French", "Spanish", "German", "Japanese", "Italian", "Korean", "Serbian", "Polish"
+    };
+    private static final String[] AWARDS = {
+            "OscarBestPicture", "OscarBestDirector", "OscarBestActor", "OscarBestActress",
+            "OscarBestCinematography", "OscarBestOriginalScore", "OscarBestSoundEditing",
+            "OscarBestVisualEffects", "OscarBestEditingFilm", "OscarBestScreenplay",
+            "OscarBestInternationalFilm", "PalmeOr", "GoldenLion"
+    };
+    private static final String[] AWARD_NAMES = {
+            "Oscar Best Picture", "Oscar Best Director", "Oscar Best Actor", "Oscar Best Actress",
+            "Oscar Best Cinematography", "Oscar Best Original Score", "Oscar Best Sound Editing",
+            "Oscar Best Visual Effects", "Oscar Best Film Editing", "Oscar Best Screenplay",
+            "Oscar Best International Film", "Palme d'Or", "Golden Lion"
+    };
+
+    private final int films;
+    private final long seed;
+
+    private int directors;
+    private int actors;
+    private int minActorsPerFilm = 2;
+    private int maxActorsPerFilm = 8;
+    private double directorSkew = 1.0;
+    private double actorSkew = 1.1;
+    private double awardRate = 0.05;
+
+    public CatalogGenerator(int films, long seed) {
+        if (films < 1) {
+            throw new IllegalArgumentException("Number of films must be positive: " + films);
+        }
+        this.films = films;
+        this.seed = seed;
+        this.directors = Math.max(1, films / 10);
+        this.actors = Math.max(1, films * 2);
+    }
+
+    public void setDirectors(int directors) {
+        this.directors = positive("directors", directors);
+    }
+
+    public void setActors(int actors) {
+        this.actors = positive("actors", actors);
+    }
+
+    // cast size, uniform between the bounds and at most the number of actors
+    public void setActorsPerFilm(int min, int max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid actors per film: " + min + "-" + max);
+        }
+        this.minActorsPerFilm = min;
+        this.maxActorsPerFilm = max;
+    }
+
+    // Zipf exponents of director and actor popularity, 0 for uniform
+    public void setDirectorSkew(double directorSkew) {
+        this.directorSkew = directorSkew;
+    }
+
+    public void setActorSkew(double actorSkew) {
+        this.actorSkew = actorSkew;
+    }
+
+    // share of films that won at least one award
+    public void setAwardRate(double awardRate) {
+        if (awardRate < 0 || awardRate > 1) {
+            throw new IllegalArgumentException("Award rate must be between 0 and 1: " + awardRate);
+        }
+        this.awardRate = awardRate;
+    }
+
+    public static String filmTitle(int film) {
+        return String.format("Film %07d", film);
+    }
+
+    public void write(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(out);
+        }
+    }
+
+    public void write(Writer writer) throws IOException {
+        BufferedWriter out = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer, 1 << 16);
+        Random random = new Random(seed);
+        ZipfSampler directorRank = new ZipfSampler(directors, directorSkew);
+        ZipfSampler actorRank = new ZipfSampler(actors, actorSkew);
+        // a few genres and languages dominate, as in real catalogs
+        ZipfSampler genreRank = new ZipfSampler(GENRES.length, 0.7);
+        ZipfSampler languageRank = new ZipfSampler(LANGUAGES.length, 1.5);
+        ZipfSampler awardRank = new ZipfSampler(AWARDS.length, 0);
+
+        out.write("@prefix : <" + TitleIndex.NS + "> .\n");
+        out.write("@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n\n");
+
+        for (String genre : GENRES) {
+            out.write(":" + genre + " a :Genre ; :genreName \"" + genre + "\" .\n");
+        }
+        for (String language : LANGUAGES) {
+            out.write(":" + language + " a :Language ; :languageName \"" + language + "\" .\n");
+        }
+        for (int i = 0; i < AWARDS.length; i++) {
+            out.write(":" + AWARDS[i] + " a :Award ; :awardName \"" + AWARD_NAMES[i] + "\" .\n");
+        }
+        for (int i = 0; i < directors; i++) {
+            out.write(":Director" + i + " a :Director ; :personName \"Director " + i + "\" .\n");
+        }
+        for (int i = 0; i < actors; i++) {
+            out.write(":Actor" + i + " a :Actor ; :personName \"Actor " + i + "\" .\n");
+        }
+        out.write('\n');
+
+        int maxCast = Math.min(maxActorsPerFilm, actors);
+        int[] cast = new int[maxCast];
+        int[] picked = new int[Math.max(GENRES.length, AWARDS.length)];
+        for (int f = 0; f < films; f++) {
+            long budget = Math.round(Math.exp(Math.log(1e6) + random.nextDouble() * Math.log(300))) / 1000 * 1000;
+            long boxOffice = Math.round(budget * Math.exp(random.nextGaussian() * 0.9)) / 1000 * 1000;
+            double rating = Math.max(1.0, Math.min(9.9, 6.5 + random.nextGaussian() * 1.1));
+
+            out.write(":Film" + f + " a :Film ;\n");
+            out.write("    :title \"" + filmTitle(f) + "\" ;\n");
+            out.write("    :releaseYear \"" + (1920 + random.nextInt(105)) + "\"^^xsd:gYear ;\n");
+            out.write("    :imdbRating \"" + String.format(Locale.ROOT, "%.1f", rating) + "\"^^xsd:decimal ;\n");
+            out.write("    :boxOfficeUSD \"" + boxOffice + "\"^^xsd:decimal ;\n");
+            out.write("    :budgetUSD \"" + budget + "\"^^xsd:decimal ;\n");
+            out.write("    :directedBy :Director" + (directorRank.sample(random) - 1) + " ;\n");
+
+            int genres = distinct(genreRank, 1 + random.nextInt(3), picked, random);
+            writeObjects(out, "hasGenre", GENRES, picked, genres);
+
+            int castSize = Math.min(maxCast, minActorsPerFilm + random.nextInt(maxActorsPerFilm - minActorsPerFilm + 1));
+            castSize = distinct(actorRank, castSize, cast, random);
+            if (castSize > 0) {
+                out.write("    :hasActor ");
+                for (int a = 0; a < castSize; a++) {
+                    out.write((a > 0 ? ", :Actor" : ":Actor") + (cast[a] - 1));
+                }
+                out.write(" ;\n");
+            }
+
+            int languages = distinct(languageRank, random.nextInt(4) == 0 ? 2 : 1, picked, random);
+            writeObjects(out, "spokenInLanguage", LANGUAGES, picked, languages);
+
+            if (random.nextDouble() < awardRate) {
+                int awards = distinct(awardRank, 1 + random.nextInt(3), picked, random);
+                writeObjects(out, "wonAward", AWARDS, picked, awards);
+            }
+            out.write("    :runtimeMinutes " + (80 + random.nextInt(101)) + " .\n\n");
+        }
+        out.flush();
+    }
+
+    // draws count distinct ranks into picked and returns how many there are; casts are short,
+    // so checking the ones drawn so far is cheaper than any set
+    private static int distinct(ZipfSampler sampler, int count, int[] picked, Random random) {
+        count = Math.min(count, sampler.getRanks());
+        int n = 0;
+        while (n < count) {
+            int rank = sampler.sample(random);
+            boolean seen = false;
+            for (int i = 0; i < n && !seen; i++) {
+                seen = picked[i] == rank;
+            }
+            if (!seen) {
+                picked[n++] = rank;
+            }
+        }
+        return n;
+    }
+
+    private static void writeObjects(Writer out, String property, String[] names, int[] ranks, int count) throws IOException {
+        out.write("    :" + property + " ");
+        for (int i = 0; i < count; i++) {
+            out.write((i > 0 ? ", :" : ":") + names[ranks[i] - 1]);
+        }
+        out.write(" ;\n");
+    }
+
+    private static int positive(String name, int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Number of " + name + " must be positive: " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,79 @@
+package ontology;
+
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.GraphView;
+import org.apache.jena.system.Txn;
+
+import java.util.function.Supplier;
+
+// snapshot-isolated access to the shared film graph. the model lives in a transactional in-memory
+// dataset (Jena TIM): a read sees one consistent snapshot for its whole action without locking out
+// the writer, and writes are applied one at a time and become visible all at once on commit.
+// listeners hear each statement inside the write, before it commits, so write() also sends
+// COMMITTED to the model's listeners once the write has ended.
+// on a plain model (generated catalogs, batch jobs) the actions just run
+public final class FilmGraph {
+
+    // sent through Model.notifyEvent after every write
+    public static final Object COMMITTED = new Object() {
+        @Override
+        public String toString() {
+            return "FilmGraph.COMMITTED";
+        }
+    };
+
+    private FilmGraph() {
+    }
+
+    // an empty model backed by its own transactional dataset. keep the returned object: every
+    // getDefaultModel() call gives a new view, with its own listeners
+    public static Model createModel() {
+        return DatasetFactory.createTxnMem().getDefaultModel();
+    }
+
+    // runs the action on one snapshot of the model; nested reads share the outer snapshot
+    public static <T> T read(Model model, Supplier<T> action) {
+        DatasetGraph dataset = dataset(model);
+        return dataset == null ? action.get() : Txn.calculateRead(dataset, action);
+    }
+
+    // applies the changes as one transaction, readers see either none or all of them.
+    // a write nested in another one commits, and announces COMMITTED, with the outer write
+    public static void write(Model model, Runnable update) {
+        DatasetGraph dataset = dataset(model);
+        if (dataset == null) {
+            update.run();
+            return;
+        }
+        boolean outermost = !dataset.isInTransaction();
+        try {
+            Txn.executeWrite(dataset, update);
+        } finally {
+            if (outermost) {
+                model.notifyEvent(COMMITTED);
+            }
+        }
+    }
+
+    // true while the calling thread is inside a write on the model that has not committed yet;
+    // changes made outside write() commit before their listeners are called
+    public static boolean isUncommitted(Model model) {
+        DatasetGraph dataset = dataset(model);
+        return dataset != null && dataset.isInTransaction() && dataset.transactionMode() == ReadWrite.WRITE;
+    }
+
+    public static boolean isTransactional(Model model) {
+        return dataset(model) != null;
+    }
+
+    private static DatasetGraph dataset(Model model) {
+        if (!(model.getGraph() instanceof GraphView)) {
+            return null;
+        }
+        DatasetGraph dataset = ((GraphView) model.getGraph()).getDataset();
+        return dataset.supportsTransactions() ? dataset : null;
+    }
+}
@@ -0,0 +1,163 @@
+package ontology;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// loads films.owl and film-instances.owl. the parsed triples are also kept as an RDF Thrift
+// snapshot keyed by a digest of both Turtle files, so a warm start decodes binary terms instead
+// of tokenizing Turtle. the snapshot is rebuilt whenever either source file changes.
+// -Dontology.snapshot= (empty) turns the snapshot off.
+// -Dontology.catalog=<file> adds a Turtle catalog from disk, e.g. one from GenerateCatalogJob; it
+// is streamed into the model and keys the snapshot by its path, size and modification time.
+// the triples are loaded into a FilmGraph model, so readers get snapshots while changes are applied
+public class OntologyStore {
+
+    public static final String SNAPSHOT_PATH = System.getProperty("ontology.snapshot", ".cache/ontology.rt");
+    public static final String CATALOG_PATH = System.getProperty("ontology.catalog", "");
+
+    private static final String[] SOURCES = { "/ontology/films.owl", "/ontology/film-instances.owl" };
+    private static final int MAGIC = 0x464F4E54;   // "FONT"
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.histogram(Metrics.ONTOLOGY_LOAD);
+
+    private OntologyStore() {
+    }
+
+    public static Model load() throws IOException {
+        long start = System.nanoTime();
+        try {
+            return loadModel();
+        } finally {
+            LOAD_LATENCY.record(System.nanoTime() - start);
+        }
+    }
+
+    private static Model loadModel() throws IOException {
+        long start = System.nanoTime();
+        byte[][] sources = readSources();
+        Path catalog = CATALOG_PATH.isEmpty() ? null : Paths.get(CATALOG_PATH);
+        String digest = digest(sources, catalog);
+        start = phase("read sources", start);
+
+        Path snapshot = SNAPSHOT_PATH.isEmpty() ? null : Paths.get(SNAPSHOT_PATH);
+        if (snapshot != null && Files.isRegularFile(snapshot)) {
+            try {
+                Model model = readSnapshot(snapshot, digest);
+                if (model != null) {
+                    phase("read snapshot " + snapshot, start);
+                    return model;
+                }
+                System.out.println("  Snapshot is out of date, reparsing sources");
+            } catch (IOException | RuntimeException e) {
+                System.out.println("  Snapshot unreadable, reparsing sources: " + e.getMessage());
+            }
+        }
+
+        Model model = FilmGraph.createModel();
+        for (int i = 0; i < SOURCES.length; i++) {
+            byte[] source = sources[i];
+            FilmGraph.write(model, () -> RDFDataMgr.read(model, new ByteArrayInputStream(source), null, Lang.TURTLE));
+            start = phase("parse " + SOURCES[i].substring(SOURCES[i].lastIndexOf('/') + 1), start);
+        }
+        if (catalog != null) {
+            FilmGraph.write(model, () -> RDFDataMgr.read(model, catalog.toString(), Lang.TURTLE));
+            start = phase("parse " + catalog.getFileName(), start);
+        }
+
+        if (snapshot != null) {
+            try {
+                writeSnapshot(snapshot, digest, model);
+                phase("write snapshot " + snapshot, start);
+            } catch (IOException e) {
+                System.out.println("  Could not write snapshot: " + e.getMessage());
+            }
+        }
+        return model;
+    }
+
+    private static byte[][] readSources() throws IOException {
+        byte[][] sources = new byte[SOURCES.length][];
+        for (int i = 0; i < SOURCES.length; i++) {
+            try (InputStream is = OntologyStore.class.getResourceAsStream(SOURCES[i])) {
+                if (is == null) throw new IllegalArgumentException(SOURCES[i].substring(1) + " not found");
+                sources[i] = is.readAllBytes();
+            }
+        }
+        return sources;
+    }
+
+    // the catalog can be gigabytes, so it counts by its path, size and modification time
+    private static String digest(byte[][] sources, Path catalog) throws IOException {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (byte[] source : sources) {
+                sha.update(source);
+                sha.update((byte) 0);
+            }
+            if (catalog != null) {
+                String key = catalog.toAbsolutePath() + "|" + Files.size(catalog) + "|" + Files.getLastModifiedTime(catalog).toMillis();
+                sha.update(key.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // null if the snapshot was made from other sources
+    private static Model readSnapshot(Path file, String digest) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(digest)) {
+                return null;
+            }
+            Model model = FilmGraph.createModel();
+            FilmGraph.write(model, () -> RDFDataMgr.read(model, in, Lang.RDFTHRIFT));
+            return model;
+        }
+    }
+
+    private static void writeSnapshot(Path file, String digest, Model model) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        // written next to the target and moved into place, so a crash never leaves a half-written snapshot
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(digest);
+            // plain RDF Thrift keeps lexical forms, so literals read back exactly as parsed
+            FilmGraph.read(model, () -> {
+                RDFDataMgr.write(out, model, RDFFormat.RDF_THRIFT);
+                return null;
+            });
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long phase(String name, long start) {
+        long now = System.nanoTime();
+        System.out.printf("  %-40s %6d ms%n", name, (now - start) / 1_000_000);
+        return now;
+    }
+}
@@ -0,0 +1,211 @@
+package ontology;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.syntax.ElementSubQuery;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// every SPARQL query of the application, read from /sparql/<name>.rq and parsed once.
+// parameters are only ever passed as substitution bindings, never spliced into the text
+public class QueryRegistry {
+
+    public static final String RECOMMEND_ALL = "recommend_all";
+    public static final String RECOMMEND_ANY = "recommend_any";
+    public static final String RECOMMEND_ALL_TWO_PHASE = "recommend_all_two_phase";
+    public static final String RECOMMEND_ANY_TWO_PHASE = "recommend_any_two_phase";
+    public static final String RECOMMEND_ALL_PAGE = "recommend_all_page";
+    public static final String RECOMMEND_ANY_PAGE = "recommend_any_page";
+    public static final String LIST_FILMS = "list_films";
+    public static final String CASE_BASE = "case_base";
+    public static final String FILM_QUALITY = "film_quality";
+    public static final String FILM_AWARDS = "film_awards";
+    public static final String QUALITY_CATALOG = "quality_catalog";
+
+    private static final String[] NAMES = {
+            RECOMMEND_ALL, RECOMMEND_ANY, RECOMMEND_ALL_TWO_PHASE, RECOMMEND_ANY_TWO_PHASE,
+            RECOMMEND_ALL_PAGE, RECOMMEND_ANY_PAGE,
+            LIST_FILMS, CASE_BASE, FILM_QUALITY, FILM_AWARDS, QUALITY_CATALOG
+    };
+
+    private static volatile QueryRegistry instance;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private QueryRegistry() {
+        for (String name : NAMES) {
+            register(name);
+        }
+    }
+
+    public static QueryRegistry getInstance() {
+        QueryRegistry local = instance;
+        if (local == null) {
+            synchronized (QueryRegistry.class) {
+                local = instance;
+                if (local == null) {
+                    local = new QueryRegistry();
+                    instance = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    private void register(String name) {
+        String resource = "/sparql/" + name + ".rq";
+        String sparql;
+        try (InputStream is = QueryRegistry.class.getResourceAsStream(resource)) {
+            if (is == null) throw new IllegalArgumentException("SPARQL not found: " + resource);
+            sparql = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Query query = QueryFactory.create(sparql);
+        // every execution reads this one Query, concurrently since the server, to build its own
+        // substituted copy and plan. the result vars and the hash code are filled on first use,
+        // so they are filled here, before the query is shared
+        query.setResultVars();
+        query.hashCode();
+        entries.put(name, new Entry(name, query));
+    }
+
+    public Query getQuery(String name) {
+        return entry(name).query;
+    }
+
+    public <T> T select(String name, Model model, Function<ResultSet, T> handler) {
+        return select(name, model, null, handler);
+    }
+
+    // runs a registered SELECT query and hands the open result set to the handler, both on one
+    // snapshot of the model. the recorded latency covers execution and consumption of the results
+    public <T> T select(String name, Model model, QuerySolutionMap bindings, Function<ResultSet, T> handler) {
+        Entry entry = entry(name);
+        return execute(entry, entry.query, model, bindings, handler);
+    }
+
+    // same, on a copy of the query whose LIMIT clauses (subqueries included) are set to the given
+    // limit; LIMIT can't be a substitution binding, and the paged queries take the page size there
+    public <T> T select(String name, Model model, QuerySolutionMap bindings, long limit, Function<ResultSet, T> handler) {
+        Entry entry = entry(name);
+        Query query = entry.query.cloneQuery();
+        if (query.hasLimit()) {
+            query.setLimit(limit);
+        }
+        ElementWalker.walk(query.getQueryPattern(), new ElementVisitorBase() {
+            @Override
+            public void visit(ElementSubQuery el) {
+                if (el.getQuery().hasLimit()) {
+                    el.getQuery().setLimit(limit);
+                }
+            }
+        });
+        return execute(entry, query, model, bindings, handler);
+    }
+
+    private <T> T execute(Entry entry, Query query, Model model, QuerySolutionMap bindings, Function<ResultSet, T> handler) {
+        long start = System.nanoTime();
+
+        try {
+            return FilmGraph.read(model, () -> {
+                QueryExecution qexec = bindings == null
+                        ? QueryExecution.create().query(query).model(model).build()
+                        : QueryExecution.create().query(query).model(model).substitution(bindings).build();
+
+                try (qexec) {
+                    return handler.apply(qexec.execSelect());
+                }
+            });
+        } finally {
+            entry.record(System.nanoTime() - start);
+        }
+    }
+
+    public Map<String, QueryStats> getStats() {
+        Map<String, QueryStats> stats = new LinkedHashMap<>();
+        for (Entry entry : entries.values()) {
+            stats.put(entry.name, entry.stats());
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    public void printStats() {
+        System.out.printf("%-20s %10s %12s %12s%n", "Query", "Executions", "Avg (ms)", "Max (ms)");
+        for (QueryStats stats : getStats().values()) {
+            System.out.printf("%-20s %10d %12.2f %12.2f%n",
+                    stats.getName(), stats.getExecutions(), stats.getAverageMillis(), stats.getMaxMillis());
+        }
+    }
+
+    private Entry entry(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown query: " + name);
+        }
+        return entry;
+    }
+
+    private static class Entry {
+        final String name;
+        final Query query;
+        final LongAdder executions = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LatencyHistogram latency;
+
+        Entry(String name, Query query) {
+            this.name = name;
+            this.query = query;
+            this.latency = Metrics.histogram(Metrics.SPARQL + name);
+        }
+
+        void record(long nanos) {
+            latency.record(nanos);
+            executions.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        QueryStats stats() {
+            return new QueryStats(name, executions.sum(), totalNanos.sum(), maxNanos.get());
+        }
+    }
+
+    public static class QueryStats {
+        private final String name;
+        private final long executions;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        QueryStats(String name, long executions, long totalNanos, long maxNanos) {
+            this.name = name;
+            this.executions = executions;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getName() { return name; }
+        public long getExecutions() { return executions; }
+        public double getAverageMillis() { return executions == 0 ? 0 : totalNanos / 1e6 / executions; }
+        public double getMaxMillis() { return maxNanos / 1e6; }
+    }
+}
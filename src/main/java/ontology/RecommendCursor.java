@@ -0,0 +1,88 @@
+package ontology;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.Objects;
+
+// keyset position in a recommendation listing: the last film of a page, by the sort key of the
+// mode. RANKED pages are ordered by (DESC score, title, film IRI), STRICT ones by (title, film IRI)
+// and carry no score. the film IRI only breaks ties between films with the same title.
+// the title is kept as the whole RDF term, language tag and datatype included, since that is what
+// the listing is sorted by. page is the number of the page the cursor starts, the first page
+// having none
+public final class RecommendCursor {
+
+    public static final int NO_SCORE = -1;
+
+    private final int page;
+    private final int score;
+    private final Node title;
+    private final String film;
+
+    public RecommendCursor(int page, int score, Node title, String film) {
+        this.page = page;
+        this.score = score;
+        this.title = Objects.requireNonNull(title);
+        this.film = Objects.requireNonNull(film);
+    }
+
+    public int getPage() { return page; }
+    public int getScore() { return score; }
+    public Node getTitle() { return title; }
+    public String getFilm() { return film; }
+
+    // opaque URL-safe token, e.g. for a "next page" link. the title goes in N-Triples form
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(page);
+            out.writeInt(score);
+            out.writeUTF(NodeFmtLib.strNT(title));
+            out.writeUTF(film);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    public static RecommendCursor decode(String token) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            int page = in.readInt();
+            int score = in.readInt();
+            Node title = NodeFactoryExtra.parseNode(in.readUTF());
+            if (page < 2 || !title.isLiteral()) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+            return new RecommendCursor(page, score, title, in.readUTF());
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RecommendCursor)) return false;
+        RecommendCursor other = (RecommendCursor) o;
+        return page == other.page && score == other.score && title.equals(other.title) && film.equals(other.film);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(page, score, title, film);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
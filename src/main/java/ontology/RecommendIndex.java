@@ -0,0 +1,473 @@
+package ontology;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.SortCondition;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ResultSetStream;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+import org.apache.jena.sparql.engine.binding.BindingComparator;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+// in-memory answer to recommend_all.rq (STRICT) and recommend_any.rq (RANKED).
+// films are numbered 0..n-1 and every genre, director, actor and language keeps a bitmap of its
+// films; release years sit in a sorted year -> bitmap map. STRICT ANDs the bitmaps of the given
+// criteria, RANKED counts per film how many of them match.
+// result rows (one per title x year x director, like the GROUP BY) are sorted once by title with
+// Jena's ORDER BY comparator, so a query only picks row numbers and materializes at most LIMIT rows
+public class RecommendIndex {
+
+    public enum Mode { STRICT, RANKED }
+
+    public static final int LIMIT = 100;
+
+    private static final Var FILM = Var.alloc("film");
+    private static final Var TITLE = Var.alloc("title");
+    private static final Var YEAR = Var.alloc("year");
+    private static final Var DIRECTOR = Var.alloc("director");
+    private static final Var GENRES = Var.alloc("genres");
+    private static final Var SCORE = Var.alloc("score");
+
+    private static final List<String> STRICT_VARS = List.of("title", "year", "director", "genres");
+    private static final List<String> RANKED_VARS = List.of("title", "year", "director", "genres", "score");
+    private static final List<String> STRICT_PAGE_VARS = List.of("film", "title", "year", "director", "genres");
+    private static final List<String> RANKED_PAGE_VARS = List.of("film", "title", "year", "director", "genres", "score");
+
+    // ORDER BY ?title on the title alone; on whole rows Jena would break ties on the other variables
+    private static final BindingComparator ORDER_BY_TITLE =
+            new BindingComparator(List.of(new SortCondition(TITLE, Query.ORDER_ASCENDING)));
+    private static final Comparator<Node> BY_TITLE =
+            (a, b) -> ORDER_BY_TITLE.compare(BindingFactory.binding(TITLE, a), BindingFactory.binding(TITLE, b));
+
+    // the only gYear form compared here; anything else is left to the SPARQL engine
+    private static final Pattern PLAIN_YEAR = Pattern.compile("-?(\\d{4}|[1-9]\\d{4,8})");
+
+    private final Model model;
+    private final int filmCount;
+
+    private final Map<Node, BitSet> genres = new HashMap<>();
+    private final Map<Node, BitSet> directors = new HashMap<>();
+    private final Map<Node, BitSet> actors = new HashMap<>();
+    private final Map<Node, BitSet> languages = new HashMap<>();
+    private final TreeMap<Integer, BitSet> years = new TreeMap<>();
+    private final boolean plainYears;
+
+    private final Node[] filmNodes;
+
+    // rows in ORDER BY ?title order
+    private final int[] rowFilm;
+    private final Node[] rowTitle;
+    private final Node[] rowYear;
+    private final Node[] rowDirector;
+    private final int[][] filmRows;
+    private final Node[] filmGenres;
+
+    private RecommendIndex(Model model) {
+        this.model = model;
+
+        Property title = model.createProperty(TitleIndex.NS, "title");
+        Resource filmClass = model.createResource(TitleIndex.NS + "Film");
+
+        // films are ?film rdf:type :Film with at least one :title
+        Map<Node, Integer> filmIds = new HashMap<>();
+        List<Resource> films = new ArrayList<>();
+        model.listResourcesWithProperty(RDF.type, filmClass).forEachRemaining(film -> {
+            if (film.hasProperty(title) && !filmIds.containsKey(film.asNode())) {
+                filmIds.put(film.asNode(), films.size());
+                films.add(film);
+            }
+        });
+        this.filmCount = films.size();
+        this.filmNodes = new Node[filmCount];
+        for (int f = 0; f < filmCount; f++) {
+            filmNodes[f] = films.get(f).asNode();
+        }
+
+        index(model, "hasGenre", filmIds, genres);
+        index(model, "directedBy", filmIds, directors);
+        index(model, "hasActor", filmIds, actors);
+        index(model, "spokenInLanguage", filmIds, languages);
+
+        Property releaseYear = model.createProperty(TitleIndex.NS, "releaseYear");
+        Property personName = model.createProperty(TitleIndex.NS, "personName");
+        Property directedBy = model.createProperty(TitleIndex.NS, "directedBy");
+        Property hasGenre = model.createProperty(TitleIndex.NS, "hasGenre");
+        Property genreName = model.createProperty(TitleIndex.NS, "genreName");
+
+        boolean allPlain = true;
+        List<Binding> rows = new ArrayList<>();
+        List<Integer> rowFilms = new ArrayList<>();
+        filmGenres = new Node[filmCount];
+
+        for (int f = 0; f < filmCount; f++) {
+            Resource film = films.get(f);
+
+            List<Node> filmYears = objects(film, releaseYear);
+            for (Node year : filmYears) {
+                Integer value = plainYear(year);
+                if (value == null) {
+                    allPlain = false;
+                } else {
+                    years.computeIfAbsent(value, y -> new BitSet(filmCount)).set(f);
+                }
+            }
+
+            // OPTIONAL { ?film :directedBy ?dir . ?dir :personName ?director }
+            Set<Node> filmDirectors = new LinkedHashSet<>();
+            for (Node dir : objects(film, directedBy)) {
+                if (dir.isURI() || dir.isBlank()) {
+                    filmDirectors.addAll(objects(model.wrapAsResource(dir), personName));
+                }
+            }
+
+            // GROUP_CONCAT(DISTINCT ?genreName; separator=", ") in the order the OPTIONAL yields them
+            Set<Node> names = new LinkedHashSet<>();
+            for (Node g : objects(film, hasGenre)) {
+                if (g.isURI() || g.isBlank()) {
+                    names.addAll(objects(model.wrapAsResource(g), genreName));
+                }
+            }
+            StringBuilder concat = new StringBuilder();
+            for (Node name : names) {
+                if (name.isBlank()) continue;
+                if (concat.length() > 0) concat.append(", ");
+                concat.append(name.isURI() ? name.getURI() : name.getLiteralLexicalForm());
+            }
+            // Jena leaves ?genres unbound for a film without genre names
+            filmGenres[f] = names.isEmpty() ? null : NodeFactory.createLiteralString(concat.toString());
+
+            List<Node> yearOrUnbound = filmYears.isEmpty() ? Arrays.asList((Node) null) : filmYears;
+            List<Node> directorOrUnbound = filmDirectors.isEmpty() ? Arrays.asList((Node) null) : new ArrayList<>(filmDirectors);
+            for (Node t : objects(film, title)) {
+                for (Node year : yearOrUnbound) {
+                    for (Node director : directorOrUnbound) {
+                        BindingBuilder row = Binding.builder();
+                        row.add(TITLE, t);
+                        if (year != null) row.add(YEAR, year);
+                        if (director != null) row.add(DIRECTOR, director);
+                        rows.add(row.build());
+                        rowFilms.add(f);
+                    }
+                }
+            }
+        }
+        this.plainYears = allPlain;
+
+        // ORDER BY ?title; SPARQL leaves ties open, here they go by film then year and director
+        Comparator<Node> nodes = (a, b) -> a == null ? (b == null ? 0 : -1) : b == null ? 1 : a.toString().compareTo(b.toString());
+        Integer[] order = new Integer[rows.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.<Integer, Node>comparing(i -> rows.get(i).get(TITLE), BY_TITLE)
+                .thenComparing(i -> films.get(rowFilms.get(i)).asNode(), nodes)
+                .thenComparing(i -> rows.get(i).get(YEAR), nodes)
+                .thenComparing(i -> rows.get(i).get(DIRECTOR), nodes));
+
+        int rowCount = order.length;
+        rowFilm = new int[rowCount];
+        rowTitle = new Node[rowCount];
+        rowYear = new Node[rowCount];
+        rowDirector = new Node[rowCount];
+        int[] perFilm = new int[filmCount];
+        for (int r = 0; r < rowCount; r++) {
+            Binding row = rows.get(order[r]);
+            rowFilm[r] = rowFilms.get(order[r]);
+            rowTitle[r] = row.get(TITLE);
+            rowYear[r] = row.get(YEAR);
+            rowDirector[r] = row.get(DIRECTOR);
+            perFilm[rowFilm[r]]++;
+        }
+        filmRows = new int[filmCount][];
+        for (int f = 0; f < filmCount; f++) {
+            filmRows[f] = new int[perFilm[f]];
+            perFilm[f] = 0;
+        }
+        for (int r = 0; r < rowCount; r++) {
+            int f = rowFilm[r];
+            filmRows[f][perFilm[f]++] = r;
+        }
+    }
+
+    // built from one snapshot of the model
+    public static RecommendIndex build(Model model) {
+        return FilmGraph.read(model, () -> new RecommendIndex(model));
+    }
+
+    public int getFilmCount() {
+        return filmCount;
+    }
+
+    // false when a year bound or a stored release year is not a plain xsd:gYear,
+    // since those comparisons follow XSD date rules that only the SPARQL engine implements
+    public boolean canAnswer(QuerySolutionMap bindings) {
+        if (bindings.contains("yearFrom") || bindings.contains("yearTo")) {
+            if (!plainYears) return false;
+            if (bindings.contains("yearFrom") && plainYear(bindings.get("yearFrom").asNode()) == null) return false;
+            if (bindings.contains("yearTo") && plainYear(bindings.get("yearTo").asNode()) == null) return false;
+        }
+        return true;
+    }
+
+    // same rows, order and LIMIT as the .rq file of the mode, for the same ?G ?D ?A ?L ?yearFrom ?yearTo bindings
+    public ResultSet recommend(Mode mode, QuerySolutionMap bindings) {
+        if (!canAnswer(bindings)) {
+            throw new IllegalArgumentException("Year bounds must be plain xsd:gYear values");
+        }
+        List<Binding> result = mode == Mode.STRICT ? strict(bindings) : ranked(bindings);
+        return ResultSetStream.create(mode == Mode.STRICT ? STRICT_VARS : RANKED_VARS, model, result.iterator());
+    }
+
+    public static List<String> pageVars(Mode mode) {
+        return mode == Mode.STRICT ? STRICT_PAGE_VARS : RANKED_PAGE_VARS;
+    }
+
+    // same rows as the mode's *_page.rq file: every row of the next pageSize films after the cursor
+    // (null for the first page), handed to the consumer as it is produced. returns the cursor of
+    // the page's last film when more films follow, null on the last page
+    public RecommendCursor recommendPage(Mode mode, QuerySolutionMap bindings, RecommendCursor after,
+                                         int pageSize, Consumer<Binding> rows) {
+        if (!canAnswer(bindings)) {
+            throw new IllegalArgumentException("Year bounds must be plain xsd:gYear values");
+        }
+
+        // films by score, best first; STRICT is a single group without a score
+        List<Integer> scores = new ArrayList<>();
+        List<BitSet> groups = new ArrayList<>();
+        if (mode == Mode.STRICT) {
+            scores.add(RecommendCursor.NO_SCORE);
+            groups.add(strictMatches(bindings));
+        } else {
+            byte[] score = rankedScores(bindings);
+            for (int s = 5; s > 0; s--) {
+                BitSet withScore = new BitSet(filmCount);
+                for (int f = 0; f < filmCount; f++) {
+                    if (score[f] == s) withScore.set(f);
+                }
+                scores.add(s);
+                groups.add(withScore);
+            }
+        }
+
+        int films = 0;
+        int lastRow = -1;
+        int lastScore = 0;
+        for (int g = 0; g < groups.size(); g++) {
+            int s = scores.get(g);
+            if (after != null && s > after.getScore()) {
+                continue;
+            }
+            int[] candidates = rowsOf(groups.get(g));
+            int i = after != null && s == after.getScore() ? firstAfter(candidates, after) : 0;
+            for (; i < candidates.length; i++) {
+                int r = candidates[i];
+                boolean nextFilm = lastRow < 0 || s != lastScore
+                        || rowFilm[r] != rowFilm[lastRow] || !rowTitle[r].equals(rowTitle[lastRow]);
+                if (nextFilm) {
+                    if (films == pageSize) {
+                        return cursor(RecommendationService.nextPage(after), lastRow, lastScore);
+                    }
+                    films++;
+                }
+                rows.accept(row(r, s, true));
+                lastRow = r;
+                lastScore = s;
+            }
+        }
+        return null;
+    }
+
+    // index of the first candidate row sorting after the cursor's (title, film)
+    private int firstAfter(int[] candidates, RecommendCursor after) {
+        Node title = after.getTitle();
+        int lo = 0;
+        int hi = candidates.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int r = candidates[mid];
+            int c = BY_TITLE.compare(rowTitle[r], title);
+            if (c == 0) {
+                c = filmNodes[rowFilm[r]].toString().compareTo(after.getFilm());
+            }
+            if (c <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private RecommendCursor cursor(int page, int r, int score) {
+        return new RecommendCursor(page, score, rowTitle[r], filmNodes[rowFilm[r]].toString());
+    }
+
+    private List<Binding> strict(QuerySolutionMap bindings) {
+        int[] candidates = rowsOf(strictMatches(bindings));
+        List<Binding> result = new ArrayList<>();
+        for (int i = 0; i < candidates.length && result.size() < LIMIT; i++) {
+            result.add(row(candidates[i], -1, false));
+        }
+        return result;
+    }
+
+    private BitSet strictMatches(QuerySolutionMap bindings) {
+        BitSet matches = new BitSet(filmCount);
+        matches.set(0, filmCount);
+        and(matches, genres, bindings, "G");
+        and(matches, directors, bindings, "D");
+        and(matches, actors, bindings, "A");
+        and(matches, languages, bindings, "L");
+
+        // two independent EXISTS, each with its own ?Y
+        Integer from = bound(bindings, "yearFrom");
+        Integer to = bound(bindings, "yearTo");
+        if (from != null) matches.and(union(years.tailMap(from, true)));
+        if (to != null) matches.and(union(years.headMap(to, true)));
+        return matches;
+    }
+
+    private List<Binding> ranked(QuerySolutionMap bindings) {
+        byte[] score = rankedScores(bindings);
+
+        // ORDER BY DESC(?score) ?title, HAVING (?score > 0)
+        List<Binding> result = new ArrayList<>();
+        for (int s = 5; s > 0 && result.size() < LIMIT; s--) {
+            BitSet withScore = new BitSet(filmCount);
+            for (int f = 0; f < filmCount; f++) {
+                if (score[f] == s) withScore.set(f);
+            }
+            int[] candidates = rowsOf(withScore);
+            for (int i = 0; i < candidates.length && result.size() < LIMIT; i++) {
+                result.add(row(candidates[i], s, false));
+            }
+        }
+        return result;
+    }
+
+    private byte[] rankedScores(QuerySolutionMap bindings) {
+        byte[] score = new byte[filmCount];
+        count(score, genres, bindings, "G");
+        count(score, directors, bindings, "D");
+        count(score, actors, bindings, "A");
+        count(score, languages, bindings, "L");
+
+        // one EXISTS with a single ?Y inside both bounds
+        Integer from = bound(bindings, "yearFrom");
+        Integer to = bound(bindings, "yearTo");
+        if (from != null || to != null) {
+            int lo = from != null ? from : Integer.MIN_VALUE;
+            int hi = to != null ? to : Integer.MAX_VALUE;
+            if (lo <= hi) {
+                BitSet inRange = union(years.subMap(lo, true, hi, true));
+                for (int f = inRange.nextSetBit(0); f >= 0; f = inRange.nextSetBit(f + 1)) {
+                    score[f]++;
+                }
+            }
+        }
+        return score;
+    }
+
+    private Binding row(int r, int score, boolean withFilm) {
+        BindingBuilder row = Binding.builder();
+        if (withFilm) row.add(FILM, filmNodes[rowFilm[r]]);
+        row.add(TITLE, rowTitle[r]);
+        if (rowYear[r] != null) row.add(YEAR, rowYear[r]);
+        if (rowDirector[r] != null) row.add(DIRECTOR, rowDirector[r]);
+        if (filmGenres[rowFilm[r]] != null) row.add(GENRES, filmGenres[rowFilm[r]]);
+        if (score >= 0) row.add(SCORE, NodeFactory.createLiteralDT(Integer.toString(score), XSDDatatype.XSDinteger));
+        return row.build();
+    }
+
+    // row numbers of the films, in result order
+    private int[] rowsOf(BitSet films) {
+        int size = 0;
+        for (int f = films.nextSetBit(0); f >= 0; f = films.nextSetBit(f + 1)) {
+            size += filmRows[f].length;
+        }
+        int[] rows = new int[size];
+        int i = 0;
+        for (int f = films.nextSetBit(0); f >= 0; f = films.nextSetBit(f + 1)) {
+            for (int r : filmRows[f]) rows[i++] = r;
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    private void and(BitSet matches, Map<Node, BitSet> index, QuerySolutionMap bindings, String var) {
+        if (bindings.contains(var)) {
+            BitSet films = index.get(bindings.get(var).asNode());
+            if (films == null) matches.clear();
+            else matches.and(films);
+        }
+    }
+
+    private void count(byte[] score, Map<Node, BitSet> index, QuerySolutionMap bindings, String var) {
+        if (!bindings.contains(var)) return;
+        BitSet films = index.get(bindings.get(var).asNode());
+        if (films == null) return;
+        for (int f = films.nextSetBit(0); f >= 0; f = films.nextSetBit(f + 1)) {
+            score[f]++;
+        }
+    }
+
+    private BitSet union(Map<Integer, BitSet> yearRange) {
+        BitSet films = new BitSet(filmCount);
+        for (BitSet year : yearRange.values()) {
+            films.or(year);
+        }
+        return films;
+    }
+
+    private static Integer bound(QuerySolutionMap bindings, String var) {
+        return bindings.contains(var) ? plainYear(bindings.get(var).asNode()) : null;
+    }
+
+    private static Integer plainYear(Node node) {
+        if (!node.isLiteral() || !XSDDatatype.XSDgYear.getURI().equals(node.getLiteralDatatypeURI())) {
+            return null;
+        }
+        String lexical = node.getLiteralLexicalForm();
+        return PLAIN_YEAR.matcher(lexical).matches() ? Integer.valueOf(lexical) : null;
+    }
+
+    private static void index(Model model, String property, Map<Node, Integer> filmIds, Map<Node, BitSet> index) {
+        StmtIterator it = model.listStatements(null, model.createProperty(TitleIndex.NS, property), (RDFNode) null);
+        while (it.hasNext()) {
+            Statement st = it.next();
+            Integer film = filmIds.get(st.getSubject().asNode());
+            if (film != null) {
+                index.computeIfAbsent(st.getObject().asNode(), o -> new BitSet(filmIds.size())).set(film);
+            }
+        }
+    }
+
+    private static List<Node> objects(Resource subject, Property property) {
+        List<Node> objects = new ArrayList<>();
+        subject.listProperties(property).forEachRemaining(st -> objects.add(st.getObject().asNode()));
+        return objects;
+    }
+}
@@ -0,0 +1,166 @@
+package ontology;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// bounded LRU cache of recommendation results, keyed on the mode plus the criteria bindings.
+// a generation counter moves on every invalidation, so a result computed before a model change
+// is never stored after it
+public class RecommendationCache {
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Result> entries;
+
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public RecommendationCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                if (size() > RecommendationCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized Result get(Key key) {
+        Result result = entries.get(key);
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    // generation to pass to put for a result computed from now on
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized void put(Key key, Result result, long computedAt) {
+        if (capacity > 0 && computedAt == generation) {
+            entries.put(key, result);
+        }
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        if (!entries.isEmpty()) {
+            entries.clear();
+            invalidations++;
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(entries.size(), capacity, hits, misses, evictions, invalidations);
+    }
+
+    // mode plus the criteria, with the bindings in variable order so equal criteria give equal keys,
+    // plus the cursor and page size for a page ("" for the whole LIMIT 100 listing)
+    public static final class Key {
+        private final RecommendIndex.Mode mode;
+        private final Map<String, Node> criteria;
+        private final String page;
+
+        public Key(RecommendIndex.Mode mode, QuerySolutionMap bindings) {
+            this(mode, bindings, "");
+        }
+
+        public Key(RecommendIndex.Mode mode, QuerySolutionMap bindings, String page) {
+            this.mode = mode;
+            this.page = page;
+            this.criteria = new TreeMap<>();
+            Iterator<String> vars = bindings.varNames();
+            while (vars.hasNext()) {
+                String var = vars.next();
+                criteria.put(var, bindings.get(var).asNode());
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return mode == other.mode && criteria.equals(other.criteria) && page.equals(other.page);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * mode.hashCode() + criteria.hashCode()) + page.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return page.isEmpty() ? mode + " " + criteria : mode + " " + criteria + " page " + page;
+        }
+    }
+
+    // materialized result rows, replayed on every hit, and for a page the cursor of the next one
+    public static final class Result {
+        private final List<String> vars;
+        private final List<Binding> rows;
+        private final RecommendCursor next;
+
+        public Result(List<String> vars, List<Binding> rows) {
+            this(vars, rows, null);
+        }
+
+        public Result(List<String> vars, List<Binding> rows, RecommendCursor next) {
+            this.vars = List.copyOf(vars);
+            this.rows = List.copyOf(rows);
+            this.next = next;
+        }
+
+        public List<String> getVars() { return vars; }
+        public List<Binding> getRows() { return rows; }
+        public RecommendCursor getNext() { return next; }
+    }
+
+    public static class Stats {
+        private final int size;
+        private final int capacity;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+
+        Stats(int size, int capacity, long hits, long misses, long evictions, long invalidations) {
+            this.size = size;
+            this.capacity = capacity;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        public int getSize() { return size; }
+        public int getCapacity() { return capacity; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getInvalidations() { return invalidations; }
+
+        @Override
+        public String toString() {
+            return String.format("Recommendation cache: %d/%d entries, %d hits, %d misses, %d evictions, %d invalidations",
+                    size, capacity, hits, misses, evictions, invalidations);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package ontology;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.listeners.StatementListener;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.sparql.core.ResultBinding;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ResultSetStream;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+// RECOMMEND over the shared model: the engine picked by -Drecommend.engine behind a result cache.
+// any change to the model empties the cache and marks the in-memory index stale; the index is
+// rebuilt by the next request that needs it. a FilmGraph write does that again on COMMITTED, so
+// nothing computed from the snapshot before the commit outlives it
+public class RecommendationService {
+
+    // index (in-memory), sparql (two-phase .rq files) or sparql-flat (single-pass .rq files)
+    public static final String ENGINE = System.getProperty("recommend.engine", "index").toLowerCase(Locale.ROOT);
+    public static final int CACHE_SIZE = Integer.getInteger("recommend.cacheSize", 256);
+    // films per page of recommendPage
+    public static final int PAGE_SIZE = Integer.getInteger("recommend.pageSize", 25);
+
+    private static final Var FILM = Var.alloc("film");
+    private static final Var TITLE = Var.alloc("title");
+    private static final Var SCORE = Var.alloc("score");
+
+    private static volatile RecommendationService instance;
+
+    private final Model model;
+    private final RecommendationCache cache = new RecommendationCache(CACHE_SIZE);
+    private volatile RecommendIndex index;
+
+    private RecommendationService(Model model) {
+        this.model = model;
+        if (ENGINE.equals("index")) {
+            long start = System.nanoTime();
+            index = RecommendIndex.build(model);
+            System.out.println("Recommendation index built: " + index.getFilmCount() + " films in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        model.register(new StatementListener() {
+            @Override
+            public void addedStatement(Statement s) {
+                modelChanged();
+            }
+
+            @Override
+            public void removedStatement(Statement s) {
+                modelChanged();
+            }
+
+            @Override
+            public void notifyEvent(Model m, Object event) {
+                modelChanged();
+            }
+        });
+    }
+
+    public static RecommendationService getInstance(Model model) {
+        RecommendationService local = instance;
+        if (local == null) {
+            synchronized (RecommendationService.class) {
+                local = instance;
+                if (local == null) {
+                    local = new RecommendationService(model);
+                    instance = local;
+                }
+            }
+        }
+        return local;
+    }
+
+    public ResultSet recommend(RecommendIndex.Mode mode, QuerySolutionMap bindings) {
+        RecommendationCache.Key key = new RecommendationCache.Key(mode, bindings);
+        RecommendationCache.Result cached = cache.get(key);
+        if (cached == null) {
+            long generation = cache.generation();
+            cached = execute(mode, bindings);
+            cache.put(key, cached, generation);
+        }
+        return ResultSetStream.create(cached.getVars(), model, cached.getRows().iterator());
+    }
+
+    // one page of recommendations after the cursor (null for the first page): all rows of up to
+    // pageSize films, handed to the consumer one by one as the engine produces them, or straight
+    // from the cache. returns the cursor of the next page, null after the last one.
+    // every SPARQL engine setting pages with the two-phase *_page.rq queries
+    public RecommendCursor recommendPage(RecommendIndex.Mode mode, QuerySolutionMap bindings, RecommendCursor after,
+                                         int pageSize, Consumer<QuerySolution> rows) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        RecommendationCache.Key key = new RecommendationCache.Key(mode, bindings,
+                (after == null ? "" : after.encode()) + "/" + pageSize);
+        RecommendationCache.Result cached = cache.get(key);
+        if (cached != null) {
+            for (Binding row : cached.getRows()) {
+                rows.accept(new ResultBinding(model, row));
+            }
+            return cached.getNext();
+        }
+
+        long generation = cache.generation();
+        List<Binding> page = new ArrayList<>();
+        RecommendCursor next = executePage(mode, bindings, after, pageSize, row -> {
+            page.add(row);
+            rows.accept(new ResultBinding(model, row));
+        });
+        cache.put(key, new RecommendationCache.Result(RecommendIndex.pageVars(mode), page, next), generation);
+        return next;
+    }
+
+    public RecommendationCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+
+    private RecommendationCache.Result execute(RecommendIndex.Mode mode, QuerySolutionMap bindings) {
+        if (ENGINE.equals("index")) {
+            RecommendIndex current = currentIndex();
+            if (current.canAnswer(bindings)) {
+                return materialize(current.recommend(mode, bindings));
+            }
+        }
+
+        boolean strict = mode == RecommendIndex.Mode.STRICT;
+        boolean flat = ENGINE.equals("sparql-flat");
+        String queryName = strict
+                ? (flat ? QueryRegistry.RECOMMEND_ALL : QueryRegistry.RECOMMEND_ALL_TWO_PHASE)
+                : (flat ? QueryRegistry.RECOMMEND_ANY : QueryRegistry.RECOMMEND_ANY_TWO_PHASE);
+        return QueryRegistry.getInstance().select(queryName, model, bindings, RecommendationService::materialize);
+    }
+
+    private RecommendCursor executePage(RecommendIndex.Mode mode, QuerySolutionMap bindings, RecommendCursor after,
+                                        int pageSize, Consumer<Binding> rows) {
+        if (ENGINE.equals("index")) {
+            RecommendIndex current = currentIndex();
+            if (current.canAnswer(bindings)) {
+                return current.recommendPage(mode, bindings, after, pageSize, rows);
+            }
+        }
+
+        boolean strict = mode == RecommendIndex.Mode.STRICT;
+        QuerySolutionMap params = new QuerySolutionMap();
+        params.addAll(bindings);
+        if (after != null) {
+            if (!strict) {
+                params.add("afterScore", model.createTypedLiteral(after.getScore()));
+            }
+            params.add("afterTitle", model.asRDFNode(after.getTitle()));
+            params.add("afterFilm", model.createLiteral(after.getFilm()));
+        }
+        // one film more than the page: its first row tells that another page follows
+        return QueryRegistry.getInstance().select(strict ? QueryRegistry.RECOMMEND_ALL_PAGE : QueryRegistry.RECOMMEND_ANY_PAGE,
+                model, params, pageSize + 1, rs -> streamPage(rs, nextPage(after), pageSize, strict, rows));
+    }
+
+    // number of the page after the one that starts at the cursor
+    static int nextPage(RecommendCursor after) {
+        return after == null ? 2 : after.getPage() + 1;
+    }
+
+    // passes rows on until the first row of film pageSize + 1, rows of one film being adjacent
+    private static RecommendCursor streamPage(ResultSet rs, int page, int pageSize, boolean strict, Consumer<Binding> rows) {
+        int films = 0;
+        Binding last = null;
+        while (rs.hasNext()) {
+            Binding row = rs.nextBinding();
+            boolean nextFilm = last == null || !row.get(FILM).equals(last.get(FILM))
+                    || !row.get(TITLE).equals(last.get(TITLE)) || !Objects.equals(row.get(SCORE), last.get(SCORE));
+            if (nextFilm) {
+                if (films == pageSize) {
+                    int score = strict ? RecommendCursor.NO_SCORE : ((Number) last.get(SCORE).getLiteralValue()).intValue();
+                    return new RecommendCursor(page, score, last.get(TITLE), last.get(FILM).toString());
+                }
+                films++;
+            }
+            rows.accept(row);
+            last = row;
+        }
+        return null;
+    }
+
+    private RecommendIndex currentIndex() {
+        RecommendIndex current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    long generation = cache.generation();
+                    current = RecommendIndex.build(model);
+                    // a change during the build leaves the index stale for the next request
+                    if (cache.generation() == generation) {
+                        index = current;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    private void modelChanged() {
+        cache.invalidate();
+        index = null;
+    }
+
+    private static RecommendationCache.Result materialize(ResultSet rs) {
+        List<Binding> rows = new ArrayList<>();
+        while (rs.hasNext()) {
+            rows.add(rs.nextBinding());
+        }
+        return new RecommendationCache.Result(rs.getResultVars(), rows);
+    }
+}
@@ -0,0 +1,129 @@
+package ontology;
+
+import org.apache.jena.rdf.listeners.StatementListener;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// normalized film title -> film IRI, so lookups don't scan or lowercase the whole graph.
+// a change to a title or a type (or a bulk remove) drops the map and the next lookup rebuilds it;
+// a FilmGraph write drops it again on COMMITTED, so nothing read from the snapshot before the
+// commit outlives it
+public class TitleIndex {
+
+    public static final String NS = "http://example.org/films#";
+
+    private final Model model;
+    private final Property title;
+    private volatile Map<String, String> filmByTitle;
+    private long generation;
+    // a title or type change was heard inside the write in progress
+    private volatile boolean uncommitted;
+
+    private TitleIndex(Model model) {
+        this.model = model;
+        this.title = model.createProperty(NS, "title");
+    }
+
+    public static TitleIndex build(Model model) {
+        TitleIndex index = new TitleIndex(model);
+        model.register(index.new Listener());
+        index.filmByTitle = FilmGraph.read(model, () -> titles(model));
+        return index;
+    }
+
+    private static Map<String, String> titles(Model model) {
+        Map<String, String> filmByTitle = new HashMap<>();
+        Property title = model.createProperty(NS, "title");
+        Resource film = model.createResource(NS + "Film");
+
+        StmtIterator it = model.listStatements(null, title, (RDFNode) null);
+        try {
+            while (it.hasNext()) {
+                Statement st = it.next();
+                Resource subject = st.getSubject();
+                if (subject.isURIResource() && st.getObject().isLiteral() && subject.hasProperty(RDF.type, film)) {
+                    filmByTitle.putIfAbsent(normalize(st.getString()), subject.getURI());
+                }
+            }
+        } finally {
+            it.close();
+        }
+        return filmByTitle;
+    }
+
+    public static String normalize(String title) {
+        return title.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // film IRI for a title typed in any case, null if there is no such film
+    public String findFilm(String title) {
+        return current().get(normalize(title));
+    }
+
+    public int size() {
+        return current().size();
+    }
+
+    private Map<String, String> current() {
+        Map<String, String> current = filmByTitle;
+        if (current == null) {
+            long before;
+            synchronized (this) {
+                before = generation;
+            }
+            current = FilmGraph.read(model, () -> titles(model));
+            synchronized (this) {
+                // a change during the build leaves the map stale for the next lookup
+                if (generation == before) {
+                    filmByTitle = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private synchronized void invalidate() {
+        generation++;
+        filmByTitle = null;
+    }
+
+    private class Listener extends StatementListener {
+
+        @Override
+        public void addedStatement(Statement s) {
+            changed(s);
+        }
+
+        @Override
+        public void removedStatement(Statement s) {
+            changed(s);
+        }
+
+        @Override
+        public void notifyEvent(Model m, Object event) {
+            if (event != FilmGraph.COMMITTED) {
+                uncommitted = true;
+                invalidate();
+            } else if (uncommitted) {
+                uncommitted = false;
+                invalidate();
+            }
+        }
+
+        private void changed(Statement s) {
+            if (s.getPredicate().equals(title) || s.getPredicate().equals(RDF.type)) {
+                uncommitted = true;
+                invalidate();
+            }
+        }
+    }
+}